@@ -0,0 +1,77 @@
+package net.quasardb.kafka.common;
+
+import net.quasardb.qdb.ts.Column;
+
+/**
+ * Immutable lookup of a table's columns by name. Uses open addressing with
+ * linear probing over a table that is at most half full, so that a lookup
+ * costs a hash and about one string comparison regardless of the number of
+ * columns.
+ */
+public class ColumnIndex {
+
+    private final Column[] columns;
+    private final String[] keys;
+    private final int[] indices;
+    private final int mask;
+
+    public ColumnIndex(Column[] columns) {
+        this.columns = columns;
+
+        int capacity = Integer.highestOneBit(Math.max(columns.length, 1) * 2 - 1) << 1;
+        this.keys = new String[capacity];
+        this.indices = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < columns.length; ++i) {
+            String name = columns[i].getName();
+            int slot = spread(name.hashCode()) & this.mask;
+
+            while (this.keys[slot] != null) {
+                if (this.keys[slot].equals(name)) {
+                    throw new IllegalArgumentException("Duplicate column: " + name);
+                }
+                slot = (slot + 1) & this.mask;
+            }
+
+            this.keys[slot] = name;
+            this.indices[slot] = i;
+        }
+    }
+
+    /**
+     * Returns the index of a column, or -1 when the table has no such column.
+     */
+    public int indexOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+
+        int slot = spread(name.hashCode()) & this.mask;
+
+        String key;
+        while ((key = this.keys[slot]) != null) {
+            if (key == name || key.equals(name)) {
+                return this.indices[slot];
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the column at an index returned by #indexOf.
+     */
+    public Column columnAt(int index) {
+        return this.columns[index];
+    }
+
+    public int size() {
+        return this.columns.length;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
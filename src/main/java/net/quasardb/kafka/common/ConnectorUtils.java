@@ -5,10 +5,16 @@ import net.quasardb.kafka.common.resolver.ColumnTimespecResolver;
 import net.quasardb.kafka.common.resolver.ColumnsResolver;
 import net.quasardb.kafka.common.resolver.DefaultColumnResolver;
 import net.quasardb.kafka.common.resolver.DefaultTimespecResolver;
+import net.quasardb.kafka.common.resolver.HeaderResolver;
+import net.quasardb.kafka.common.resolver.KeyResolver;
 import net.quasardb.kafka.common.resolver.Resolver;
+import net.quasardb.kafka.common.resolver.RoutingResolver;
 import net.quasardb.kafka.common.resolver.StaticResolver;
 import net.quasardb.kafka.common.resolver.SuffixedResolver;
+import net.quasardb.kafka.common.resolver.TemplateResolver;
+import net.quasardb.kafka.common.resolver.TimespecConverter;
 import net.quasardb.kafka.common.resolver.TopicResolver;
+import net.quasardb.kafka.common.writer.ArrayRecordWriter;
 import net.quasardb.kafka.common.writer.ColumnRecordWriter;
 import net.quasardb.kafka.common.writer.RecordWriter;
 import net.quasardb.kafka.common.writer.RowRecordWriter;
@@ -19,7 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -33,19 +39,50 @@ public class ConnectorUtils {
 
     /**
      * Parses table input config and emits a mapping of Kafka topics to
-     * QuasarDB tables.
+     * QuasarDB tables, in the order they were provided. Every entry is split
+     * on its first '=', a regular expression holding a '=' escapes it as "\=".
+     * Connect splits lists on commas, so an entry ending in a backslash is
+     * joined back with the next one, and a regular expression holding a ','
+     * escapes it as "\,". The backslash of both escapes is removed.
      */
     public static Map<String, String> parseTableFromTopic(Collection<String> xs) {
-        Map<String, String> out = new HashMap<>(xs.size());
+        Map<String, String> out = new LinkedHashMap<>(xs.size());
 
+        String escaped = null;
         for (String x : xs) {
-            String[] tokens = x.split("=");
+            if (escaped != null) {
+                x = escaped + "," + x;
+                escaped = null;
+            }
+
+            if (x.endsWith("\\")) {
+                escaped = x.substring(0, x.length() - 1);
+                continue;
+            }
+
+            StringBuilder topic = new StringBuilder(x.length());
+            int eq = -1;
+            for (int i = 0; i < x.length() && eq == -1; ++i) {
+                char c = x.charAt(i);
+                if (c == '\\' && i + 1 < x.length() && x.charAt(i + 1) == '=') {
+                    topic.append('=');
+                    ++i;
+                } else if (c == '=') {
+                    eq = i;
+                } else {
+                    topic.append(c);
+                }
+            }
 
-            if (tokens.length != 2) {
+            if (eq <= 0 || eq == x.length() - 1) {
                 throw new DataException("Incorrectly formatted table config: expected 'topic=table', got: " + x);
             }
 
-            out.put(tokens[0], tokens[1]);
+            out.put(topic.toString(), x.substring(eq + 1));
+        }
+
+        if (escaped != null) {
+            throw new DataException("Incorrectly formatted table config: expected 'topic=table', got: " + escaped);
         }
 
         return out;
@@ -82,6 +119,34 @@ public class ConnectorUtils {
             return new ColumnsResolver(config, config.getList(TABLE_FROM_COMPOSITE_COLUMNS_CONFIG), config.getString(TABLE_FROM_COMPOSITE_COLUMNS_DELIM_CONFIG));
         }
 
+        if (config.getList(TABLE_ROUTES_CONFIG) != null) {
+            log.debug("{} set, using RoutingResolver", TABLE_ROUTES_CONFIG);
+            Resolver<String> fallback = (config.getString(TABLE_TEMPLATE_CONFIG) != null
+                                         ? new TemplateResolver(config, config.getString(TABLE_TEMPLATE_CONFIG))
+                                         : null);
+            return new RoutingResolver(config, parseTableFromTopic(config.getList(TABLE_ROUTES_CONFIG)), fallback);
+        }
+
+        if (config.getString(TABLE_TEMPLATE_CONFIG) != null) {
+            log.debug("{} set, using TemplateResolver", TABLE_TEMPLATE_CONFIG);
+            return new TemplateResolver(config, config.getString(TABLE_TEMPLATE_CONFIG));
+        }
+
+        if (config.getString(TABLE_FROM_HEADER_CONFIG) != null) {
+            log.debug("{} set, using HeaderResolver", TABLE_FROM_HEADER_CONFIG);
+            return new HeaderResolver<>(config, config.getString(TABLE_FROM_HEADER_CONFIG), true);
+        }
+
+        if (config.getString(TABLE_FROM_KEY_FIELD_CONFIG) != null) {
+            log.debug("{} set, using KeyResolver", TABLE_FROM_KEY_FIELD_CONFIG);
+            return new KeyResolver<>(config, config.getString(TABLE_FROM_KEY_FIELD_CONFIG), true);
+        }
+
+        if (config.getBoolean(TABLE_FROM_KEY_CONFIG)) {
+            log.debug("{} set to true, using KeyResolver", TABLE_FROM_KEY_CONFIG);
+            return new KeyResolver<>(config, null, true);
+        }
+
         if (config.getBoolean(TABLE_FROM_TOPIC_CONFIG)) {
             log.debug("{} set to true, using TopicResolver", TABLE_FROM_TOPIC_CONFIG);
             return new TopicResolver(config);
@@ -163,6 +228,8 @@ public class ConnectorUtils {
         Resolver<Timespec> timespecResolver;
         if (config.getString(TIMESTAMP_FROM_COLUMN_CONFIG) != null) {
             timespecResolver = new ColumnTimespecResolver(config, config.getString(TIMESTAMP_FROM_COLUMN_CONFIG), TimeUnit.valueOf(config.getString(TIMESTAMP_FROM_COLUMN_UNIT_CONFIG)));
+        } else if (config.getString(TIMESTAMP_FROM_HEADER_CONFIG) != null) {
+            timespecResolver = new ColumnTimespecResolver(config, new HeaderResolver<>(config, config.getString(TIMESTAMP_FROM_HEADER_CONFIG)), TimeUnit.valueOf(config.getString(TIMESTAMP_FROM_COLUMN_UNIT_CONFIG)));
         } else {
             timespecResolver = new DefaultTimespecResolver(config);
         }
@@ -175,8 +242,21 @@ public class ConnectorUtils {
             }
         }
 
+        if (config.getString(EXPLODE_TIMESTAMPS_FIELD_CONFIG) != null
+                || config.getString(EXPLODE_POINTS_FIELD_CONFIG) != null) {
+            log.debug("enabling array record writer");
+
+            return new ArrayRecordWriter(timespecResolver,
+                                         new TimespecConverter(TimeUnit.valueOf(config.getString(TIMESTAMP_FROM_COLUMN_UNIT_CONFIG))),
+                                         config.getString(EXPLODE_TIMESTAMPS_FIELD_CONFIG),
+                                         config.getString(EXPLODE_POINTS_FIELD_CONFIG),
+                                         config.getString(EXPLODE_POINTS_TIMESTAMP_FIELD_CONFIG));
+        }
+
         if ((config.getString(COLUMN_FROM_COLUMN_CONFIG) != null)
                 || (config.getList(COLUMN_FROM_COMPOSITE_COLUMNS_CONFIG) != null)
+                || (config.getString(COLUMN_FROM_HEADER_CONFIG) != null)
+                || config.getBoolean(COLUMN_FROM_KEY_CONFIG)
                 || (config.getString(VALUE_COLUMN_CONFIG) != null)
                 || (config.getString(VALUE_FROM_COLUMN_CONFIG) != null)) {
             log.debug("enabling column value resolver");
@@ -187,6 +267,10 @@ public class ConnectorUtils {
                 columnResolver = new DefaultColumnResolver<>(config, config.getString(COLUMN_FROM_COLUMN_CONFIG));
             } else if (config.getList(COLUMN_FROM_COMPOSITE_COLUMNS_CONFIG) != null) {
                 columnResolver = new ColumnsResolver(config, config.getList(COLUMN_FROM_COMPOSITE_COLUMNS_CONFIG), config.getString(COLUMN_FROM_COMPOSITE_COLUMNS_DELIM_CONFIG));
+            } else if (config.getString(COLUMN_FROM_HEADER_CONFIG) != null) {
+                columnResolver = new HeaderResolver<>(config, config.getString(COLUMN_FROM_HEADER_CONFIG), true);
+            } else if (config.getBoolean(COLUMN_FROM_KEY_CONFIG)) {
+                columnResolver = new KeyResolver<>(config, null, true);
             } else {
                 log.error("Unable to determine a column resolver for column value resolver");
                 return null;
@@ -202,7 +286,8 @@ public class ConnectorUtils {
                 return null;
             }
 
-            return new ColumnRecordWriter(timespecResolver, columnResolver, valueResolver);
+            return new ColumnRecordWriter(timespecResolver, columnResolver, valueResolver,
+                                          config.getInt(COLUMN_COALESCE_WINDOW_CONFIG));
         }
 
         return new RowRecordWriter(timespecResolver);
@@ -0,0 +1,270 @@
+package net.quasardb.kafka.common;
+
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Value;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled strategy for converting Structs of a single Connect schema into
+ * rows of a single QuasarDB table. Field lookups and type dispatch are resolved
+ * once when the plan is compiled, which leaves an indexed loop on the hot path.
+ */
+public class ConversionPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionPlan.class);
+
+    /**
+     * Extracts the value of a single column from a Struct, either as a Value or
+     * directly into a TableBuffer.
+     */
+    abstract static class Extractor {
+        protected final Field field;
+
+        Extractor(Field field) {
+            this.field = field;
+        }
+
+        abstract Value extract(Struct data);
+
+        abstract void extractInto(Struct data, TableBuffer buffer, int column, int row);
+    }
+
+    private final Schema schema;
+    private final Extractor[] extractors;
+
+    private ConversionPlan(Schema schema, Extractor[] extractors) {
+        this.schema = schema;
+        this.extractors = extractors;
+    }
+
+    /**
+     * Compiles a plan for converting Structs of `schema` into rows for `columns`.
+     */
+    public static ConversionPlan compile(Schema schema, Column[] columns) {
+        Extractor[] extractors = new Extractor[columns.length];
+
+        for (int i = 0; i < columns.length; ++i) {
+            extractors[i] = compile(schema, columns[i]);
+        }
+
+        log.debug("Compiled conversion plan for schema {} with {} columns", schema.name(), columns.length);
+        return new ConversionPlan(schema, extractors);
+    }
+
+    private static Extractor compile(Schema schema, Column column) {
+        Field field = schema.field(column.getName());
+
+        if (field == null) {
+            log.warn("key not found, setting null value: {}", column.getName());
+            return new NullExtractor();
+        }
+
+        Schema fieldSchema = field.schema();
+
+        // Logical types are represented by different Java types than their
+        // underlying schema type suggests, let the generic conversion handle those.
+        if (fieldSchema.name() == null) {
+            switch (column.getType()) {
+                case INT64:
+                    if (fieldSchema.type() == Schema.Type.INT64) {
+                        return new Int64Extractor(field);
+                    }
+                    break;
+                case DOUBLE:
+                    if (fieldSchema.type() == Schema.Type.FLOAT64) {
+                        return new DoubleExtractor(field);
+                    }
+                    if (fieldSchema.type() == Schema.Type.INT64) {
+                        return new Int64AsDoubleExtractor(field);
+                    }
+                    break;
+                case TIMESTAMP:
+                    if (fieldSchema.type() == Schema.Type.INT64) {
+                        return new TimestampExtractor(field);
+                    }
+                    break;
+                case BLOB:
+                    if (fieldSchema.type() == Schema.Type.STRING) {
+                        return new StringExtractor(field);
+                    }
+                    break;
+            }
+        }
+
+        return new GenericExtractor(field, column);
+    }
+
+    /**
+     * Returns true when this plan can be used for Structs of `other`.
+     */
+    public boolean matches(Schema other) {
+        return this.schema == other || this.schema.equals(other);
+    }
+
+    /**
+     * Returns a plan sharing this plan's extractors, bound to an equal schema
+     * instance so that subsequent lookups succeed on identity.
+     */
+    public ConversionPlan rebind(Schema other) {
+        return new ConversionPlan(other, this.extractors);
+    }
+
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    public Value[] convert(Struct data) {
+        Value[] out = new Value[this.extractors.length];
+
+        for (int i = 0; i < this.extractors.length; ++i) {
+            out[i] = this.extractors[i].extract(data);
+        }
+
+        return out;
+    }
+
+    /**
+     * Converts a Struct into row `row` of a TableBuffer.
+     */
+    public void convertInto(Struct data, TableBuffer buffer, int row) {
+        for (int i = 0; i < this.extractors.length; ++i) {
+            this.extractors[i].extractInto(data, buffer, i, row);
+        }
+    }
+
+    private static class NullExtractor extends Extractor {
+        NullExtractor() {
+            super(null);
+        }
+
+        Value extract(Struct data) {
+            return Value.createNull();
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            buffer.setNull(column, row);
+        }
+    }
+
+    private static class Int64Extractor extends Extractor {
+        Int64Extractor(Field field) {
+            super(field);
+        }
+
+        Value extract(Struct data) {
+            Object value = data.get(this.field);
+            return value == null ? Value.createNull() : Value.createInt64((Long) value);
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            Object value = data.get(this.field);
+            if (value == null) {
+                buffer.setNull(column, row);
+            } else {
+                buffer.setInt64(column, row, (Long) value);
+            }
+        }
+    }
+
+    private static class DoubleExtractor extends Extractor {
+        DoubleExtractor(Field field) {
+            super(field);
+        }
+
+        Value extract(Struct data) {
+            Object value = data.get(this.field);
+            return value == null ? Value.createNull() : Value.createDouble((Double) value);
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            Object value = data.get(this.field);
+            if (value == null) {
+                buffer.setNull(column, row);
+            } else {
+                buffer.setDouble(column, row, (Double) value);
+            }
+        }
+    }
+
+    private static class Int64AsDoubleExtractor extends Extractor {
+        Int64AsDoubleExtractor(Field field) {
+            super(field);
+        }
+
+        Value extract(Struct data) {
+            Object value = data.get(this.field);
+            return value == null ? Value.createNull() : Value.createDouble(((Long) value).doubleValue());
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            Object value = data.get(this.field);
+            if (value == null) {
+                buffer.setNull(column, row);
+            } else {
+                buffer.setDouble(column, row, ((Long) value).doubleValue());
+            }
+        }
+    }
+
+    private static class TimestampExtractor extends Extractor {
+        TimestampExtractor(Field field) {
+            super(field);
+        }
+
+        Value extract(Struct data) {
+            Object value = data.get(this.field);
+            return value == null ? Value.createNull() : Value.createTimestamp(new Timespec((Long) value));
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            Object value = data.get(this.field);
+            if (value == null) {
+                buffer.setNull(column, row);
+            } else {
+                buffer.setTimestamp(column, row, (Long) value);
+            }
+        }
+    }
+
+    private static class StringExtractor extends Extractor {
+        StringExtractor(Field field) {
+            super(field);
+        }
+
+        Value extract(Struct data) {
+            Object value = data.get(this.field);
+            return value == null ? Value.createNull() : Value.createSafeString((String) value);
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            Object value = data.get(this.field);
+            if (value == null) {
+                buffer.setNull(column, row);
+            } else {
+                buffer.setBlob(column, row, value);
+            }
+        }
+    }
+
+    private static class GenericExtractor extends Extractor {
+        private final Column column;
+
+        GenericExtractor(Field field, Column column) {
+            super(field);
+            this.column = column;
+        }
+
+        Value extract(Struct data) {
+            return RecordConverter.convert(this.column, data.get(this.field));
+        }
+
+        void extractInto(Struct data, TableBuffer buffer, int column, int row) {
+            RecordConverter.convertInto(this.column, data.get(this.field), buffer, column, row);
+        }
+    }
+}
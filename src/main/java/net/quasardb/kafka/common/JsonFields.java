@@ -0,0 +1,227 @@
+package net.quasardb.kafka.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import org.apache.kafka.connect.errors.DataException;
+
+/**
+ * The top-level fields of a JSON object, parsed straight from its raw bytes
+ * with a streaming parser. Numbers are kept unboxed and nested objects and
+ * arrays are skipped, so that converting a record into a row does not require
+ * a Map of boxed values to be built first.
+ *
+ * Integers are exposed as Long and decimals as Double, like the values of a
+ * Map built by Connect's JsonConverter.
+ */
+public class JsonFields {
+
+    public enum Kind {
+        LONG, DOUBLE, STRING, BOOLEAN, NULL
+    }
+
+    // Canonicalizes field names, so equal names of different records are
+    // usually the same String instance.
+    private static final JsonFactory factory = new JsonFactory();
+
+    private String[] names;
+    private Kind[] kinds;
+    private long[] numbers;
+    private Object[] objects;
+    private int size;
+
+    private JsonFields(int capacity) {
+        this.names = new String[capacity];
+        this.kinds = new Kind[capacity];
+        this.numbers = new long[capacity];
+        this.objects = new Object[capacity];
+    }
+
+    public static JsonFields parse(byte[] json) throws DataException {
+        try (JsonParser p = factory.createParser(json)) {
+            return parse(p);
+        } catch (IOException e) {
+            throw new DataException("record is not a valid JSON object", e);
+        }
+    }
+
+    public static JsonFields parse(String json) throws DataException {
+        try (JsonParser p = factory.createParser(json)) {
+            return parse(p);
+        } catch (IOException e) {
+            throw new DataException("record is not a valid JSON object", e);
+        }
+    }
+
+    private static JsonFields parse(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new DataException("record is not a JSON object");
+        }
+
+        JsonFields out = new JsonFields(8);
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.getCurrentName();
+
+            switch (p.nextToken()) {
+            case VALUE_NUMBER_INT:
+                if (p.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    out.add(name, Kind.DOUBLE, Double.doubleToRawLongBits(p.getDoubleValue()), null);
+                } else {
+                    out.add(name, Kind.LONG, p.getLongValue(), null);
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                out.add(name, Kind.DOUBLE, Double.doubleToRawLongBits(p.getDoubleValue()), null);
+                break;
+            case VALUE_STRING:
+                out.add(name, Kind.STRING, 0, p.getText());
+                break;
+            case VALUE_TRUE:
+                out.add(name, Kind.BOOLEAN, 0, Boolean.TRUE);
+                break;
+            case VALUE_FALSE:
+                out.add(name, Kind.BOOLEAN, 0, Boolean.FALSE);
+                break;
+            case VALUE_NULL:
+                out.add(name, Kind.NULL, 0, null);
+                break;
+            default:
+                p.skipChildren();
+            }
+        }
+
+        return out;
+    }
+
+    private void add(String name, Kind kind, long number, Object object) {
+        if (this.size == this.names.length) {
+            int capacity = this.size * 2;
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.numbers = Arrays.copyOf(this.numbers, capacity);
+            this.objects = Arrays.copyOf(this.objects, capacity);
+        }
+
+        this.names[this.size] = name;
+        this.kinds[this.size] = kind;
+        this.numbers[this.size] = number;
+        this.objects[this.size] = object;
+        ++this.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the index of a field, or -1 when not found. Looks at `hint`
+     * first, so that callers looking up fields in the order they usually
+     * appear find them without scanning.
+     */
+    public int indexOf(String name, int hint) {
+        if (hint >= 0 && hint < this.size && name.equals(this.names[hint])) {
+            return hint;
+        }
+
+        for (int i = 0; i < this.size; ++i) {
+            if (name.equals(this.names[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int indexOf(String name) {
+        return indexOf(name, -1);
+    }
+
+    public Kind kindAt(int i) {
+        return this.kinds[i];
+    }
+
+    public long longAt(int i) {
+        return this.numbers[i];
+    }
+
+    public double doubleAt(int i) {
+        return Double.longBitsToDouble(this.numbers[i]);
+    }
+
+    /**
+     * Returns the value of a field, boxed when it is a number.
+     */
+    public Object valueAt(int i) {
+        switch (this.kinds[i]) {
+        case LONG:
+            return longAt(i);
+        case DOUBLE:
+            return doubleAt(i);
+        default:
+            return this.objects[i];
+        }
+    }
+
+    /**
+     * Returns the value of a field, or null when not found.
+     */
+    public Object get(String name) {
+        int i = indexOf(name);
+        return i == -1 ? null : valueAt(i);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof JsonFields)) {
+            return false;
+        }
+
+        JsonFields other = (JsonFields) o;
+        if (this.size != other.size) {
+            return false;
+        }
+
+        for (int i = 0; i < this.size; ++i) {
+            if (!this.names[i].equals(other.names[i])
+                || this.kinds[i] != other.kinds[i]
+                || this.numbers[i] != other.numbers[i]
+                || !Objects.equals(this.objects[i], other.objects[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < this.size; ++i) {
+            h = 31 * h + this.names[i].hashCode();
+            h = 31 * h + Long.hashCode(this.numbers[i]);
+            h = 31 * h + Objects.hashCode(this.objects[i]);
+        }
+
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        for (int i = 0; i < this.size; ++i) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(this.names[i]).append('=').append(valueAt(i));
+        }
+
+        return b.append('}').toString();
+    }
+}
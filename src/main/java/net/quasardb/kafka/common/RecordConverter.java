@@ -1,5 +1,6 @@
 package net.quasardb.kafka.common;
 
+import java.util.Date;
 import java.util.Map;
 import net.quasardb.qdb.ts.Column;
 import net.quasardb.qdb.ts.Timespec;
@@ -27,6 +28,212 @@ public class RecordConverter {
         return doConvert(columns, record.valueSchema(), record.value());
     }
 
+    /**
+     * Converts a record into a row for a table. Structs are converted through a
+     * ConversionPlan which is cached inside the TableInfo, and recompiled when a
+     * record with a different schema arrives.
+     */
+    public static Value[] convert(TableInfo t, SinkRecord record) throws DataException {
+        Object data = record.value();
+
+        if (record.valueSchema() != null && data instanceof Struct) {
+            Struct struct = (Struct)data;
+            return planFor(t, struct.schema()).convert(struct);
+        }
+
+        return doConvert(t.getTable().getColumns(), record.valueSchema(), data);
+    }
+
+    /**
+     * Converts a record into row `row` of a TableBuffer, without materializing
+     * intermediate Value objects for primitive columns.
+     */
+    public static void convert(TableInfo t, SinkRecord record, TableBuffer buffer, int row) throws DataException {
+        Object data = record.value();
+
+        if (record.valueSchema() != null && data instanceof Struct) {
+            Struct struct = (Struct)data;
+            planFor(t, struct.schema()).convertInto(struct, buffer, row);
+            return;
+        }
+
+        if (data instanceof Map) {
+            Column[] columns = t.getTable().getColumns();
+            for (int i = 0; i < columns.length; ++i) {
+                doConvert(columns[i], columns[i].getName(), (Map)data, buffer, i, row);
+            }
+            return;
+        }
+
+        if (data instanceof JsonFields) {
+            JsonFields fields = (JsonFields)data;
+            Column[] columns = t.getTable().getColumns();
+
+            // Fields tend to appear in the same order as the columns
+            int hint = 0;
+            for (int i = 0; i < columns.length; ++i) {
+                int field = fields.indexOf(columns[i].getName(), hint);
+                doConvert(columns[i], fields, field, buffer, i, row);
+                hint = field + 1;
+            }
+            return;
+        }
+
+        throw new DataException("Only schemaful converters are currently supported, input: " + data.toString());
+    }
+
+    /**
+     * Converts a single column of a record into a cell of a TableBuffer.
+     */
+    public static void convert(Column qdbColumn, String recordColumn, SinkRecord record,
+                               TableBuffer buffer, int column, int row) throws DataException {
+        Object data = record.value();
+
+        if (record.valueSchema() != null && data instanceof Struct) {
+            try {
+                convertInto(qdbColumn, ((Struct)data).get(recordColumn), buffer, column, row);
+            } catch (DataException ex) {
+                log.warn("key not found, setting null value: {}", qdbColumn.getName());
+                buffer.setNull(column, row);
+            }
+            return;
+        }
+
+        if (data instanceof Map) {
+            doConvert(qdbColumn, recordColumn, (Map)data, buffer, column, row);
+            return;
+        }
+
+        if (data instanceof JsonFields) {
+            JsonFields fields = (JsonFields)data;
+            doConvert(qdbColumn, fields, fields.indexOf(recordColumn), buffer, column, row);
+            return;
+        }
+
+        throw new DataException("Only schemaful converters are currently supported, input: " + data.toString());
+    }
+
+    private static void doConvert(Column qdbColumn, String recordColumn, Map data,
+                                  TableBuffer buffer, int column, int row) {
+        Object value = data.get(recordColumn);
+        if (value == null) {
+            log.warn("key not found, setting null value: {}", qdbColumn.getName());
+            buffer.setNull(column, row);
+            return;
+        }
+
+        convertInto(qdbColumn, value, buffer, column, row);
+    }
+
+    /**
+     * Stores field `field` of raw JSON into a TableBuffer cell, without boxing
+     * numbers that have the expected type.
+     */
+    private static void doConvert(Column qdbColumn, JsonFields fields, int field,
+                                  TableBuffer buffer, int column, int row) {
+        if (field == -1) {
+            log.warn("key not found, setting null value: {}", qdbColumn.getName());
+            buffer.setNull(column, row);
+            return;
+        }
+
+        JsonFields.Kind kind = fields.kindAt(field);
+
+        switch (qdbColumn.getType()) {
+            case INT64:
+                if (kind == JsonFields.Kind.LONG) {
+                    buffer.setInt64(column, row, fields.longAt(field));
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if (kind == JsonFields.Kind.DOUBLE) {
+                    buffer.setDouble(column, row, fields.doubleAt(field));
+                    return;
+                }
+                if (kind == JsonFields.Kind.LONG) {
+                    buffer.setDouble(column, row, (double) fields.longAt(field));
+                    return;
+                }
+                break;
+            case TIMESTAMP:
+                if (kind == JsonFields.Kind.LONG) {
+                    buffer.setTimestamp(column, row, fields.longAt(field));
+                    return;
+                }
+                break;
+        }
+
+        convertInto(qdbColumn, fields.valueAt(field), buffer, column, row);
+    }
+
+    /**
+     * Stores a single value into a TableBuffer cell, using primitive storage
+     * when the value has the expected type and falling back to a converted Value
+     * otherwise.
+     */
+    public static void convertInto(Column qdbColumn, Object value, TableBuffer buffer, int column, int row) {
+        if (value == null) {
+            buffer.setNull(column, row);
+            return;
+        }
+
+        switch (qdbColumn.getType()) {
+            case INT64:
+                if (value instanceof Long) {
+                    buffer.setInt64(column, row, (Long) value);
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if (value instanceof Double) {
+                    buffer.setDouble(column, row, (Double) value);
+                    return;
+                }
+                if (value instanceof Long) {
+                    buffer.setDouble(column, row, ((Long) value).doubleValue());
+                    return;
+                }
+                break;
+            case TIMESTAMP:
+                if (value instanceof Long) {
+                    buffer.setTimestamp(column, row, (Long) value);
+                    return;
+                }
+                if (value instanceof Date) {
+                    buffer.setTimestamp(column, row, ((Date) value).getTime());
+                    return;
+                }
+                break;
+            case BLOB:
+                if (value instanceof byte[] || value instanceof String) {
+                    buffer.setBlob(column, row, value);
+                    return;
+                }
+                break;
+        }
+
+        buffer.setValue(column, row, convert(qdbColumn, value));
+    }
+
+    private static ConversionPlan planFor(TableInfo t, Schema schema) {
+        ConversionPlan plan = t.getConversionPlan();
+
+        if (plan != null && plan.getSchema() == schema) {
+            return plan;
+        }
+
+        if (plan != null && plan.matches(schema)) {
+            plan = plan.rebind(schema);
+        } else {
+            log.debug("New schema for table {}, compiling conversion plan", t.getTable().getName());
+            plan = ConversionPlan.compile(schema, t.getTable().getColumns());
+        }
+
+        t.setConversionPlan(plan);
+        return plan;
+    }
+
 
     private static Value doConvert(Column qdbColumn, String recordColumn, Schema schema, Object data) throws DataException {
 
@@ -40,6 +247,11 @@ public class RecordConverter {
             return doConvert(qdbColumn, recordColumn, (Map)data);
         }
 
+        // raw JSON
+        if (data instanceof JsonFields) {
+            return convert(qdbColumn, ((JsonFields)data).get(recordColumn));
+        }
+
         throw new DataException("Only schemaful converters are currently supported, input: " + data.toString());
     }
 
@@ -55,62 +267,85 @@ public class RecordConverter {
             return doConvert(columns, (Map)data);
         }
 
+        // raw JSON
+        if (data instanceof JsonFields) {
+            JsonFields fields = (JsonFields)data;
+            Value[] out = new Value[columns.length];
+            for (int i = 0; i < columns.length; ++i) {
+                out[i] = convert(columns[i], fields.get(columns[i].getName()));
+            }
+            return out;
+        }
+
         throw new DataException("Only schemaful converters are currently supported, input: " + data.toString());
     }
 
 
     private static Value doConvert(Column qdbColumn, String recordColumn, Struct data) throws DataException {
         try {
-            Object value = data.get(recordColumn);
-            if (value != null) {
-                switch (qdbColumn.getType()) {
-                    case INT64:
-                        if (value instanceof Long) {
-                            return Value.createInt64((Long) value);
-                        }
-
-                        log.warn("Ignoring int64 column '{}': expected Long value, got: {}",
-                            qdbColumn.getName(), value.getClass());
-                        return Value.createNull();
-                    case DOUBLE:
-                        if (value instanceof Double) {
-                            return Value.createDouble((Double) value);
-                        }
-
-                        if (value instanceof Long) {
-                            return Value.createDouble(((Long) value).doubleValue());
-                        }
-
-                        log.warn("Ignoring double column '{}': expected Double value, got: {}",
-                            qdbColumn.getName(), value.getClass());
-                        return Value.createNull();
-                    case TIMESTAMP:
-                        if (value instanceof Long) {
-                            return Value.createTimestamp(new Timespec((Long) value));
-                        }
-
-                        log.warn("Ignoring timestamp column '{}': expected Long value, got: {}",
-                            qdbColumn.getName(), value.getClass());
-                        return Value.createNull();
-                    case BLOB:
-                        if (value instanceof byte[]) {
-                            return Value.createSafeBlob((byte[]) value);
-                        }
-                        if (value instanceof String) {
-                            return Value.createSafeString((String) value);
-                        }
-
-                        log.warn("Ignoring blob column '{}': expected byte[]/String value, got: {}",
-                            qdbColumn.getName(), value.getClass());
-                        return Value.createNull();
-                }
-            }
+            return convert(qdbColumn, data.get(recordColumn));
         }catch(DataException ex) {
             log.warn("key not found, setting null value: {}", qdbColumn.getName());
         }
         return Value.createNull();
     }
 
+    /**
+     * Converts a single value of a Struct or Map into a QuasarDB value for a
+     * column.
+     */
+    public static Value convert(Column qdbColumn, Object value) {
+        if (value != null) {
+            switch (qdbColumn.getType()) {
+                case INT64:
+                    if (value instanceof Long) {
+                        return Value.createInt64((Long) value);
+                    }
+
+                    log.warn("Ignoring int64 column '{}': expected Long value, got: {}",
+                        qdbColumn.getName(), value.getClass());
+                    return Value.createNull();
+                case DOUBLE:
+                    if (value instanceof Double) {
+                        return Value.createDouble((Double) value);
+                    }
+
+                    if (value instanceof Long) {
+                        return Value.createDouble(((Long) value).doubleValue());
+                    }
+
+                    log.warn("Ignoring double column '{}': expected Double value, got: {}",
+                        qdbColumn.getName(), value.getClass());
+                    return Value.createNull();
+                case TIMESTAMP:
+                    if (value instanceof Long) {
+                        return Value.createTimestamp(new Timespec((Long) value));
+                    }
+
+                    // Timestamp logical type
+                    if (value instanceof Date) {
+                        return Value.createTimestamp(new Timespec(((Date) value).getTime()));
+                    }
+
+                    log.warn("Ignoring timestamp column '{}': expected Long value, got: {}",
+                        qdbColumn.getName(), value.getClass());
+                    return Value.createNull();
+                case BLOB:
+                    if (value instanceof byte[]) {
+                        return Value.createSafeBlob((byte[]) value);
+                    }
+                    if (value instanceof String) {
+                        return Value.createSafeString((String) value);
+                    }
+
+                    log.warn("Ignoring blob column '{}': expected byte[]/String value, got: {}",
+                        qdbColumn.getName(), value.getClass());
+                    return Value.createNull();
+            }
+        }
+        return Value.createNull();
+    }
+
 
 
     private static Value doConvert(Column qdbColumn, String recordColumn, Map data) throws DataException {
@@ -0,0 +1,108 @@
+package net.quasardb.kafka.common;
+
+/**
+ * Remembers the rows written for a single Kafka partition since its offsets
+ * were last committed, so that records Connect delivers again to the same
+ * task can be dropped: after put failed with a retriable error, or when the
+ * partition is revoked and assigned back to this task before its offsets
+ * were committed. Filters only live in the memory of the task, records
+ * replayed after a restart or to another task are written again.
+ *
+ * Rows are kept as hashes in a Bloom filter of fixed size, and are only added
+ * once they were written, so that records of a put that failed are written
+ * when they are delivered again. Only records with an offset that was already
+ * written are checked against the filter, records past the highest offset
+ * written are never replays and are always passed. Once the filter holds as
+ * many rows as it was sized for, it stops taking new rows rather than
+ * degrading its false positive rate.
+ */
+public class ReplayFilter {
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+    private final int capacity;
+
+    private int count;
+    private long maxOffset = -1;
+
+    /**
+     * @param capacity Number of rows the filter is sized for.
+     * @param falsePositiveRate Probability of a replayed row that was not
+     *                          written before being taken for a duplicate.
+     */
+    public ReplayFilter(int capacity, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+
+        this.numBits = Math.max(64, (m + 63) & ~63L);
+        this.bits = new long[(int) (this.numBits >>> 6)];
+        this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / capacity * ln2));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns true when a row with the given hash was written before at or
+     * below this offset.
+     */
+    public boolean contains(long hash, long offset) {
+        if (offset > this.maxOffset) {
+            return false;
+        }
+
+        long h = mix(hash);
+        return test((int) h, (int) (h >>> 32));
+    }
+
+    /**
+     * Remembers a row that was written.
+     */
+    public void add(long hash, long offset) {
+        if (this.count < this.capacity) {
+            long h = mix(hash);
+            set((int) h, (int) (h >>> 32));
+            ++this.count;
+        }
+        this.maxOffset = Math.max(this.maxOffset, offset);
+    }
+
+    public long getMaxOffset() {
+        return this.maxOffset;
+    }
+
+    /**
+     * Approximate memory held by the filter, in bytes.
+     */
+    public long sizeInBytes() {
+        return this.bits.length * 8L;
+    }
+
+    // Kirsch-Mitzenmacher: derives all bit positions from two hashes
+
+    private boolean test(int h1, int h2) {
+        for (int i = 1; i <= this.numHashes; ++i) {
+            long bit = Math.floorMod(h1 + (long) i * h2, this.numBits);
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(int h1, int h2) {
+        for (int i = 1; i <= this.numHashes; ++i) {
+            long bit = Math.floorMod(h1 + (long) i * h2, this.numBits);
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // Finalizer of MurmurHash3, spreads the bits of weak hash codes
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3f9fe1a85ebL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,107 @@
+package net.quasardb.kafka.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Value;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Derives the column layout of a QuasarDB table from the Connect schema of a
+ * record, for creating tables without a skeleton table. Layouts are cached per
+ * schema, up to a maximum number of schemas after which the least recently
+ * used layout is dropped. Thread-safe.
+ */
+public class SchemaLayoutCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaLayoutCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final Map<Schema, Column[]> layouts;
+
+    public SchemaLayoutCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries Maximum number of schemas to keep the layout of.
+     */
+    public SchemaLayoutCache(int maxEntries) {
+        this.layouts = new LinkedHashMap<Schema, Column[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Schema, Column[]> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+    }
+
+    public synchronized Column[] get(Schema schema) throws DataException {
+        if (schema == null || schema.type() != Schema.Type.STRUCT) {
+            throw new DataException("Deriving a table layout requires a record with a struct schema, got: " + schema);
+        }
+
+        return this.layouts.computeIfAbsent(schema, SchemaLayoutCache::infer);
+    }
+
+    public synchronized int size() {
+        return this.layouts.size();
+    }
+
+    /**
+     * Maps every field of a struct schema to a column: INT64 to int64, FLOAT64
+     * to double, STRING and BYTES to blob, and the Timestamp logical type to
+     * timestamp. Fields of any other type are left out.
+     */
+    public static Column[] infer(Schema schema) {
+        List<Column> columns = new ArrayList<>(schema.fields().size());
+
+        for (Field field : schema.fields()) {
+            Value.Type type = typeOf(field.schema());
+            if (type == null) {
+                log.debug("No column type for field {} of type {}, skipping", field.name(), field.schema().type());
+                continue;
+            }
+
+            columns.add(new Column(field.name(), type));
+        }
+
+        if (columns.isEmpty()) {
+            throw new DataException("No field of schema " + schema.name() + " maps to a column type");
+        }
+
+        log.debug("Derived {} columns from schema {}", columns.size(), schema.name());
+        return columns.toArray(new Column[0]);
+    }
+
+    private static Value.Type typeOf(Schema schema) {
+        if (Timestamp.LOGICAL_NAME.equals(schema.name())) {
+            return Value.Type.TIMESTAMP;
+        }
+
+        // Other logical types are not represented by the Java types the
+        // conversion expects.
+        if (schema.name() != null) {
+            return null;
+        }
+
+        switch (schema.type()) {
+            case INT64:
+                return Value.Type.INT64;
+            case FLOAT64:
+                return Value.Type.DOUBLE;
+            case STRING:
+            case BYTES:
+                return Value.Type.BLOB;
+            default:
+                return null;
+        }
+    }
+}
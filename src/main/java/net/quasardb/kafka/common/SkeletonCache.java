@@ -0,0 +1,60 @@
+package net.quasardb.kafka.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.quasardb.qdb.Session;
+import net.quasardb.qdb.ts.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the skeleton tables used for autocreation, so that their column
+ * layout is not read from the cluster again for every table created. Entries
+ * are reloaded once they are older than the refresh interval. Thread-safe.
+ */
+public class SkeletonCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SkeletonCache.class);
+
+    private static class Entry {
+        final Table table;
+        final long loadedAt;
+
+        Entry(Table table, long loadedAt) {
+            this.table = table;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long refreshMs;
+    private final Map<String, Entry> skeletons = new ConcurrentHashMap<>();
+
+    /**
+     * @param refreshMs Time in milliseconds after which a skeleton is read again,
+     *                  or 0 to read skeletons every time.
+     */
+    public SkeletonCache(long refreshMs) {
+        this.refreshMs = refreshMs;
+    }
+
+    /**
+     * Returns the skeleton table with the given name, reading it from the
+     * cluster when it is not cached or its entry expired. Blocking function.
+     */
+    public Table get(Session session, String name) {
+        if (this.refreshMs == 0) {
+            return new Table(session, name);
+        }
+
+        long now = System.currentTimeMillis();
+        Entry e = this.skeletons.get(name);
+
+        if (e == null || now - e.loadedAt >= this.refreshMs) {
+            log.debug("Loading skeleton table {}", name);
+            e = new Entry(new Table(session, name), now);
+            this.skeletons.put(name, e);
+        }
+
+        return e.table;
+    }
+}
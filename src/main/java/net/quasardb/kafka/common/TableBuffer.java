@@ -0,0 +1,607 @@
+package net.quasardb.kafka.common;
+
+import java.io.IOException;
+import java.util.Arrays;
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Value;
+import net.quasardb.qdb.ts.Writer;
+
+/**
+ * Columnar staging area for the rows of a single table. Timestamps and numeric
+ * cells are kept in primitive arrays, which are reused after every drain, so
+ * that staging a row does not allocate once the buffer reached its working size.
+ *
+ * Rows are either dense, in which case cells that were not set are written as
+ * null, or sparse, in which case only the cells that were set are written.
+ *
+ * The buffer keeps track of how far its rows are out of timestamp order, and
+ * can write them sorted by timestamp or grouped per shard.
+ */
+public class TableBuffer {
+
+    /**
+     * Order in which rows are written.
+     */
+    public enum Order {
+        /** The order in which rows were added */
+        ARRIVAL,
+        /** Grouped per shard, in the order rows were added within a shard */
+        SHARD,
+        /** Sorted by timestamp */
+        TIMESTAMP
+    }
+
+    /**
+     * Receives drained rows, a Writer outside of tests.
+     */
+    interface Sink {
+        void append(int offset, Timespec ts, Value[] values) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final Value NULL = Value.createNull();
+
+    // Rough per-entry sizes used to estimate the memory held by the buffer
+    private static final int PRIMITIVE_BYTES = 8;
+    private static final int OBJECT_BYTES = 32;
+
+    private final Value.Type[] types;
+
+    private int size;
+    private int capacity;
+    private long bytes;
+    private long lastRowBytes;
+    private int descents;
+
+    private long[] timestamps;
+    private long[] dense;
+
+    private final long[][] present;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final Object[][] objects;
+
+    public TableBuffer(Column[] columns, int capacity) {
+        this.types = new Value.Type[columns.length];
+        this.capacity = Math.max(capacity, 16);
+        this.timestamps = new long[this.capacity];
+        this.dense = new long[words(this.capacity)];
+
+        this.present = new long[columns.length][];
+        this.longs = new long[columns.length][];
+        this.doubles = new double[columns.length][];
+        this.objects = new Object[columns.length][];
+
+        for (int i = 0; i < columns.length; ++i) {
+            this.types[i] = columns[i].getType();
+            this.present[i] = new long[words(this.capacity)];
+
+            switch (this.types[i]) {
+                case INT64:
+                case TIMESTAMP:
+                    this.longs[i] = new long[this.capacity];
+                    break;
+                case DOUBLE:
+                    this.doubles[i] = new double[this.capacity];
+                    break;
+                default:
+                    this.objects[i] = new Object[this.capacity];
+                    break;
+            }
+        }
+    }
+
+    public static long toNanos(Timespec ts) {
+        return ts.getSec() * NANOS_PER_SECOND + ts.getNano();
+    }
+
+    public static Timespec fromNanos(long nanos) {
+        return new Timespec(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Estimate of the memory held by the rows in this buffer, in bytes.
+     */
+    public long estimatedBytes() {
+        return this.bytes;
+    }
+
+    public int columnCount() {
+        return this.types.length;
+    }
+
+    /**
+     * Number of rows with a lower timestamp than the row before them, 0 when the
+     * rows are in timestamp order.
+     */
+    public int disorder() {
+        return this.descents;
+    }
+
+    /**
+     * Adds a new row to the buffer.
+     *
+     * @param timestamp Timestamp of the row, in nanoseconds since epoch.
+     * @param isDense Whether cells that are not set should be written as null.
+     * @return Index of the new row, to be used when setting its cells.
+     */
+    public int addRow(long timestamp, boolean isDense) {
+        if (this.size == this.capacity) {
+            grow();
+        }
+
+        int row = this.size++;
+        if (row > 0 && timestamp < this.timestamps[row - 1]) {
+            ++this.descents;
+        }
+        this.lastRowBytes = this.bytes;
+        this.bytes += PRIMITIVE_BYTES;
+        this.timestamps[row] = timestamp;
+        if (isDense) {
+            setBit(this.dense, row);
+        }
+
+        return row;
+    }
+
+    /**
+     * Looks for a row among the last `window` rows that a cell of `column` with
+     * the given timestamp can be merged into, that is a row with the same
+     * timestamp in which the column is not set yet.
+     *
+     * @return Index of the row, or -1 when there is none.
+     */
+    public int findRow(long timestamp, int column, int window) {
+        int end = Math.max(0, this.size - window);
+
+        for (int row = this.size - 1; row >= end; --row) {
+            if (this.timestamps[row] == timestamp && !getBit(this.present[column], row)) {
+                return row;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Turns a row into a dense row, so that it is written as a single wide row
+     * in which the cells that were not set are null.
+     */
+    public void coalesce(int row) {
+        setBit(this.dense, row);
+    }
+
+    public boolean isDense(int row) {
+        return getBit(this.dense, row);
+    }
+
+    public boolean isSet(int column, int row) {
+        return getBit(this.present[column], row);
+    }
+
+    /**
+     * Unsets a single cell, used to roll back a cell that could not be
+     * converted.
+     */
+    public void clearCell(int column, int row) {
+        if (!getBit(this.present[column], row)) {
+            return;
+        }
+
+        Object o = this.objects[column] == null ? null : this.objects[column][row];
+        if (o == null) {
+            this.bytes -= PRIMITIVE_BYTES;
+        } else {
+            this.bytes -= OBJECT_BYTES;
+            if (o instanceof byte[]) {
+                this.bytes -= ((byte[]) o).length;
+            } else if (o instanceof String) {
+                this.bytes -= 2L * ((String) o).length();
+            }
+            this.objects[column][row] = null;
+        }
+
+        clearBit(this.present[column], row);
+    }
+
+    /**
+     * Appends all rows of another buffer with the same column layout to this
+     * buffer, preserving their order.
+     */
+    public void appendAll(TableBuffer other) {
+        if (other.types.length != this.types.length) {
+            throw new IllegalArgumentException("Column layouts differ: " + other.types.length + " vs " + this.types.length);
+        }
+
+        while (this.capacity < this.size + other.size) {
+            grow();
+        }
+
+        int base = this.size;
+        if (base > 0 && other.size > 0 && other.timestamps[0] < this.timestamps[base - 1]) {
+            ++this.descents;
+        }
+        this.descents += other.descents;
+        System.arraycopy(other.timestamps, 0, this.timestamps, base, other.size);
+
+        for (int c = 0; c < this.types.length; ++c) {
+            if (this.longs[c] != null) {
+                System.arraycopy(other.longs[c], 0, this.longs[c], base, other.size);
+            }
+            if (this.doubles[c] != null) {
+                System.arraycopy(other.doubles[c], 0, this.doubles[c], base, other.size);
+            }
+            if (other.objects[c] != null) {
+                if (this.objects[c] == null) {
+                    this.objects[c] = new Object[this.capacity];
+                }
+                System.arraycopy(other.objects[c], 0, this.objects[c], base, other.size);
+            }
+        }
+
+        for (int row = 0; row < other.size; ++row) {
+            if (getBit(other.dense, row)) {
+                setBit(this.dense, base + row);
+            }
+            for (int c = 0; c < this.types.length; ++c) {
+                if (getBit(other.present[c], row)) {
+                    setBit(this.present[c], base + row);
+                }
+            }
+        }
+
+        this.size += other.size;
+        this.bytes += other.bytes;
+        this.lastRowBytes = this.bytes;
+    }
+
+    /**
+     * Drops all rows starting at `row`, used to roll back a row that could not
+     * be converted.
+     */
+    public void truncate(int row) {
+        if (row <= 0) {
+            clear();
+            return;
+        }
+
+        if (row >= this.size) {
+            return;
+        }
+
+        for (int i = row; i < this.size; ++i) {
+            clearRow(i);
+        }
+
+        this.bytes = (row == this.size - 1) ? this.lastRowBytes : this.bytes * row / this.size;
+        this.size = row;
+
+        this.descents = 0;
+        for (int i = 1; i < row; ++i) {
+            if (this.timestamps[i] < this.timestamps[i - 1]) {
+                ++this.descents;
+            }
+        }
+    }
+
+    public void setInt64(int column, int row, long value) {
+        this.longs[column][row] = value;
+        this.bytes += PRIMITIVE_BYTES;
+        setBit(this.present[column], row);
+    }
+
+    public void setDouble(int column, int row, double value) {
+        this.doubles[column][row] = value;
+        this.bytes += PRIMITIVE_BYTES;
+        setBit(this.present[column], row);
+    }
+
+    /**
+     * Sets a timestamp cell from milliseconds since epoch.
+     */
+    public void setTimestamp(int column, int row, long millis) {
+        this.longs[column][row] = millis * NANOS_PER_MILLI;
+        this.bytes += PRIMITIVE_BYTES;
+        setBit(this.present[column], row);
+    }
+
+    /**
+     * Sets a blob cell, either a byte[] or a String.
+     */
+    public void setBlob(int column, int row, Object value) {
+        if (value instanceof byte[]) {
+            this.bytes += ((byte[]) value).length;
+        } else if (value instanceof String) {
+            this.bytes += 2L * ((String) value).length();
+        }
+        setObject(column, row, value);
+    }
+
+    /**
+     * Sets a cell to an already converted value.
+     */
+    public void setValue(int column, int row, Value value) {
+        setObject(column, row, value);
+    }
+
+    /**
+     * Sets a cell to null. For dense rows this is the same as leaving the cell
+     * unset, for sparse rows an explicit null value will be written.
+     */
+    public void setNull(int column, int row) {
+        if (!getBit(this.dense, row)) {
+            setObject(column, row, NULL);
+        }
+    }
+
+    /**
+     * Appends all buffered rows to a writer and clears the buffer.
+     *
+     * @param w Writer the table is registered with.
+     * @param offset Offset of the table inside the writer.
+     */
+    public void drainTo(Writer w, int offset) throws IOException {
+        drainTo(w, offset, Order.ARRIVAL, 0, false);
+    }
+
+    /**
+     * Appends all buffered rows to a writer and clears the buffer.
+     *
+     * @param w Writer the table is registered with.
+     * @param offset Offset of the table inside the writer.
+     * @param order Order to append the rows in. Rows that compare equal keep the
+     *              order they were added in.
+     * @param shardNanos Shard size of the table in nanoseconds, required when
+     *                   grouping rows per shard.
+     * @param flushPerShard Whether to flush the writer every time the rows move
+     *                      on to the next shard, so that every flush touches a
+     *                      single shard of this table.
+     */
+    public void drainTo(Writer w, int offset, Order order, long shardNanos, boolean flushPerShard) throws IOException {
+        drainTo(new Sink() {
+                @Override
+                public void append(int offset, Timespec ts, Value[] values) throws IOException {
+                    w.append(offset, ts, values);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    w.flush();
+                }
+            }, offset, order, shardNanos, flushPerShard);
+    }
+
+    void drainTo(Sink w, int offset, Order order, long shardNanos, boolean flushPerShard) throws IOException {
+        int[] rows = null;
+        if (order == Order.TIMESTAMP && this.descents > 0) {
+            rows = sortedOrder(1);
+        } else if (order == Order.SHARD && this.descents > 0 && shardNanos > 0) {
+            rows = sortedOrder(shardNanos);
+        }
+
+        boolean shardFlushes = flushPerShard && order != Order.ARRIVAL && shardNanos > 0;
+        long lastShard = 0;
+
+        for (int i = 0; i < this.size; ++i) {
+            int row = rows == null ? i : rows[i];
+
+            if (shardFlushes) {
+                long shard = Math.floorDiv(this.timestamps[row], shardNanos);
+                if (i > 0 && shard != lastShard) {
+                    w.flush();
+                }
+                lastShard = shard;
+            }
+
+            Timespec ts = fromNanos(this.timestamps[row]);
+
+            if (getBit(this.dense, row)) {
+                Value[] values = new Value[this.types.length];
+                for (int c = 0; c < this.types.length; ++c) {
+                    values[c] = valueAt(c, row);
+                }
+
+                w.append(offset, ts, values);
+            } else {
+                for (int c = 0; c < this.types.length; ++c) {
+                    if (getBit(this.present[c], row)) {
+                        Value[] values = { valueAt(c, row) };
+                        w.append(offset + c, ts, values);
+                    }
+                }
+            }
+        }
+
+        clear();
+    }
+
+    public void clear() {
+        int used = words(this.size);
+
+        Arrays.fill(this.dense, 0, used, 0L);
+        for (int c = 0; c < this.types.length; ++c) {
+            Arrays.fill(this.present[c], 0, used, 0L);
+            if (this.objects[c] != null) {
+                Arrays.fill(this.objects[c], 0, this.size, null);
+            }
+        }
+
+        this.size = 0;
+        this.bytes = 0;
+        this.lastRowBytes = 0;
+        this.descents = 0;
+    }
+
+    /**
+     * Returns the row indices in order of their timestamp divided by `unit`,
+     * which is 1 to sort by timestamp or the shard size to group per shard.
+     * Rows arrive as ascending runs, typically one per Kafka partition, so this
+     * is a natural merge sort which merges adjacent runs until a single run is
+     * left.
+     */
+    private int[] sortedOrder(long unit) {
+        int n = this.size;
+        long[] keys = this.timestamps;
+        if (unit != 1) {
+            keys = new long[n];
+            for (int i = 0; i < n; ++i) {
+                keys[i] = Math.floorDiv(this.timestamps[i], unit);
+            }
+        }
+
+        int[] src = new int[n];
+        int[] dst = new int[n];
+        for (int i = 0; i < n; ++i) {
+            src[i] = i;
+        }
+
+        // Boundaries of the runs, the last one being the end of the buffer. Keys
+        // never descend where timestamps do not, so there are at most as many
+        // runs as for the timestamps.
+        int[] runs = new int[this.descents + 2];
+        int count = 0;
+        runs[count++] = 0;
+        for (int i = 1; i < n; ++i) {
+            if (keys[i] < keys[i - 1]) {
+                runs[count++] = i;
+            }
+        }
+        runs[count++] = n;
+
+        while (count > 2) {
+            int merged = 0;
+            int k = 0;
+
+            for (; k + 2 < count; k += 2) {
+                merge(keys, src, dst, runs[k], runs[k + 1], runs[k + 2]);
+                runs[merged++] = runs[k];
+            }
+
+            if (k + 2 == count) {
+                // Odd run out, carried over as is
+                System.arraycopy(src, runs[k], dst, runs[k], runs[k + 1] - runs[k]);
+                runs[merged++] = runs[k];
+            }
+
+            runs[merged++] = n;
+            count = merged;
+
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+
+        return src;
+    }
+
+    private static void merge(long[] keys, int[] src, int[] dst, int from, int mid, int to) {
+        int left = from;
+        int right = mid;
+
+        for (int i = from; i < to; ++i) {
+            if (right == to || (left < mid && keys[src[left]] <= keys[src[right]])) {
+                dst[i] = src[left++];
+            } else {
+                dst[i] = src[right++];
+            }
+        }
+    }
+
+    private Value valueAt(int column, int row) {
+        if (!getBit(this.present[column], row)) {
+            return NULL;
+        }
+
+        Object o = this.objects[column] == null ? null : this.objects[column][row];
+        if (o instanceof Value) {
+            return (Value) o;
+        }
+
+        switch (this.types[column]) {
+            case INT64:
+                return Value.createInt64(this.longs[column][row]);
+            case DOUBLE:
+                return Value.createDouble(this.doubles[column][row]);
+            case TIMESTAMP:
+                return Value.createTimestamp(fromNanos(this.longs[column][row]));
+            default:
+                if (o instanceof byte[]) {
+                    return Value.createSafeBlob((byte[]) o);
+                }
+                if (o instanceof String) {
+                    return Value.createSafeString((String) o);
+                }
+                return NULL;
+        }
+    }
+
+    private void setObject(int column, int row, Object value) {
+        if (this.objects[column] == null) {
+            this.objects[column] = new Object[this.capacity];
+        }
+
+        this.objects[column][row] = value;
+        this.bytes += OBJECT_BYTES;
+        setBit(this.present[column], row);
+    }
+
+    private void clearRow(int row) {
+        clearBit(this.dense, row);
+        for (int c = 0; c < this.types.length; ++c) {
+            clearBit(this.present[c], row);
+            if (this.objects[c] != null) {
+                this.objects[c][row] = null;
+            }
+        }
+    }
+
+    private void grow() {
+        int newCapacity = this.capacity * 2;
+
+        this.timestamps = Arrays.copyOf(this.timestamps, newCapacity);
+        this.dense = Arrays.copyOf(this.dense, words(newCapacity));
+
+        for (int c = 0; c < this.types.length; ++c) {
+            this.present[c] = Arrays.copyOf(this.present[c], words(newCapacity));
+            if (this.longs[c] != null) {
+                this.longs[c] = Arrays.copyOf(this.longs[c], newCapacity);
+            }
+            if (this.doubles[c] != null) {
+                this.doubles[c] = Arrays.copyOf(this.doubles[c], newCapacity);
+            }
+            if (this.objects[c] != null) {
+                this.objects[c] = Arrays.copyOf(this.objects[c], newCapacity);
+            }
+        }
+
+        this.capacity = newCapacity;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static void setBit(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clearBit(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    private static boolean getBit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -1,5 +1,6 @@
 package net.quasardb.kafka.common;
 
+import net.quasardb.kafka.common.metrics.TableMetrics;
 import net.quasardb.qdb.ts.Table;
 
 /**
@@ -7,16 +8,43 @@ import net.quasardb.qdb.ts.Table;
  */
 public class TableInfo {
     private Table table;
+    private final ColumnIndex columnIndex;
     private int offset;
+    private TableWriter writer;
+    private volatile ConversionPlan conversionPlan;
+    private TableBuffer buffer;
+    private TableBuffer spare;
+    private volatile long lastAccess;
+    private long shardSize;
+    private final TableMetrics metrics = new TableMetrics();
 
     public TableInfo(Table table) {
-        this.table = table;
-        this.offset = -1;
+        this(table, -1);
     }
 
     public TableInfo(Table table, int offset) {
         this.table = table;
         this.offset = offset;
+        this.columnIndex = new ColumnIndex(table.getColumns());
+    }
+
+    /**
+     * Lookup of the table's columns by name, built once when the table is
+     * registered.
+     */
+    public ColumnIndex getColumnIndex() {
+        return this.columnIndex;
+    }
+
+    /**
+     * The writer this table is registered with, or null when not registered.
+     */
+    public TableWriter getWriter() {
+        return this.writer;
+    }
+
+    public void setWriter(TableWriter writer) {
+        this.writer = writer;
     }
 
     public boolean hasOffset() {
@@ -31,6 +59,77 @@ public class TableInfo {
         return this.offset;
     }
 
+    /**
+     * Conversion plan for the most recently seen record schema of this table, or
+     * null when none has been compiled yet.
+     */
+    public ConversionPlan getConversionPlan() {
+        return this.conversionPlan;
+    }
+
+    public void setConversionPlan(ConversionPlan conversionPlan) {
+        this.conversionPlan = conversionPlan;
+    }
+
+    /**
+     * Returns the staging buffer of this table, creating it on first use.
+     */
+    public TableBuffer getBuffer() {
+        if (this.buffer == null) {
+            this.buffer = new TableBuffer(this.table.getColumns(), 1024);
+        }
+        return this.buffer;
+    }
+
+    /**
+     * Swaps the staging buffer for the spare one and returns the buffer holding
+     * the staged rows. The returned buffer becomes the next spare, so it must be
+     * drained before this function is called again.
+     */
+    public TableBuffer swapBuffer() {
+        TableBuffer full = getBuffer();
+
+        this.buffer = this.spare != null ? this.spare : new TableBuffer(this.table.getColumns(), 1024);
+        this.spare = full;
+
+        return full;
+    }
+
+    public boolean hasBufferedRows() {
+        return this.buffer != null && !this.buffer.isEmpty();
+    }
+
+    /**
+     * Time in milliseconds since epoch the table was last looked up in the
+     * registry.
+     */
+    public long getLastAccess() {
+        return this.lastAccess;
+    }
+
+    void touch(long now) {
+        this.lastAccess = now;
+    }
+
+    /**
+     * Number of buffered rows written to the writer so far, and how many of
+     * them had a lower timestamp than the row staged before them.
+     */
+    public TableMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Shard size of the table in milliseconds, or 0 when not known.
+     */
+    public long getShardSize() {
+        return this.shardSize;
+    }
+
+    public void setShardSize(long shardSize) {
+        this.shardSize = shardSize;
+    }
+
     public Table getTable() {
         return this.table;
     }
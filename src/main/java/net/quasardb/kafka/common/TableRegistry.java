@@ -1,6 +1,10 @@
 package net.quasardb.kafka.common;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import net.quasardb.qdb.Session;
 import net.quasardb.qdb.exception.AliasNotFoundException;
@@ -11,13 +15,49 @@ import org.slf4j.LoggerFactory;
 /**
  * A registry that contains one or more TableInfo entries, which can be
  * used to lookup and cache metadata about a Table's representation.
+ *
+ * The registry can be bounded in size and in the time an entry may stay
+ * unused, in which case the least recently used entries are evicted. Evicted
+ * entries are kept aside until the owner retires them through #takeEvicted,
+ * as they may still hold rows that need to be written. Looking up an evicted
+ * entry before then revives it.
+ *
+ * Names of tables that were found not to exist are remembered for a while, so
+ * that they are not looked up again for every record. All functions are
+ * thread-safe.
  */
 public class TableRegistry {
     private static final Logger log = LoggerFactory.getLogger(TableRegistry.class);
-    private Map<String, TableInfo> registry;
+
+    // Number of missing tables after which expired ones are swept
+    private static final int MAX_MISSING = 4096;
+
+    private final int maxEntries;
+    private final long idleTtlMs;
+    private final long missingTtlMs;
+
+    private final LinkedHashMap<String, TableInfo> registry;
+    private final Map<String, TableInfo> evicted;
+    private final Map<String, Long> missing;
 
     public TableRegistry() {
-        this.registry = new HashMap<>();
+        this(0, 0, 0);
+    }
+
+    /**
+     * @param maxEntries Maximum number of tables kept, or 0 for no maximum.
+     * @param idleTtlMs Maximum time in milliseconds a table may stay unused, or
+     *                  0 to keep unused tables around.
+     * @param missingTtlMs Time in milliseconds a table that was not found is
+     *                     remembered as missing, or 0 to not remember.
+     */
+    public TableRegistry(int maxEntries, long idleTtlMs, long missingTtlMs) {
+        this.maxEntries = maxEntries;
+        this.idleTtlMs = idleTtlMs;
+        this.missingTtlMs = missingTtlMs;
+        this.registry = new LinkedHashMap<>(16, 0.75f, true);
+        this.evicted = new LinkedHashMap<>();
+        this.missing = new HashMap<>();
     }
 
     /**
@@ -27,11 +67,34 @@ public class TableRegistry {
      * @param session Active connection with the QuasarDB cluster
      * @param name Table name to look up and add.
      * @return A reference to the added TableInfo object inside the registry, or
-     *         null when the table was not found.
+     *         null when the table was not found or is known to be missing.
      */
     public TableInfo put(Session session, String name) {
+        if (isMissing(name)) {
+            log.debug("Table {} is known to be missing, skipping lookup", name);
+            return null;
+        }
+
+        Table t = lookup(session, name);
+        if (t == null) {
+            markMissing(name);
+            return null;
+        }
+
+        return this.put(name, t);
+    }
+
+    /**
+     * Resolves a table without adding it to the registry. Blocking function,
+     * safe to call from multiple threads.
+     *
+     * @param session Active connection with the QuasarDB cluster
+     * @param name Table name to look up.
+     * @return The table, or null when the table was not found.
+     */
+    public static Table lookup(Session session, String name) {
         try {
-            return this.put(name, new Table(session, name));
+            return new Table(session, name);
         } catch (AliasNotFoundException e) {
             return null;
         }
@@ -45,10 +108,15 @@ public class TableRegistry {
         return this.put(name, new TableInfo(t));
     }
 
-    public TableInfo put(String name, TableInfo t) {
-        this.registry.put(name, t);
+    public synchronized TableInfo put(String name, TableInfo t) {
+        long now = System.currentTimeMillis();
 
+        t.touch(now);
+        this.registry.put(name, t);
+        this.missing.remove(name);
         log.debug("Added table {} to TableRegistry", name);
+
+        evict(now);
         return t;
     }
 
@@ -58,7 +126,98 @@ public class TableRegistry {
      * @param name Name of the table to look up
      * @return Reference to the Tableinfo
      */
-    public TableInfo get(String name) {
-        return this.registry.get(name);
+    public synchronized TableInfo get(String name) {
+        TableInfo t = this.registry.get(name);
+
+        if (t == null) {
+            t = this.evicted.remove(name);
+            if (t == null) {
+                return null;
+            }
+
+            log.debug("Reviving evicted table {}", name);
+            this.registry.put(name, t);
+        }
+
+        t.touch(System.currentTimeMillis());
+        return t;
+    }
+
+    /**
+     * Remembers that a table does not exist.
+     */
+    public synchronized void markMissing(String name) {
+        if (this.missingTtlMs <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.missing.size() >= MAX_MISSING) {
+            this.missing.values().removeIf(expiresAt -> expiresAt <= now);
+        }
+
+        this.missing.put(name, now + this.missingTtlMs);
+    }
+
+    /**
+     * Returns true when a table was recently found not to exist.
+     */
+    public synchronized boolean isMissing(String name) {
+        Long expiresAt = this.missing.get(name);
+        if (expiresAt == null) {
+            return false;
+        }
+
+        if (expiresAt <= System.currentTimeMillis()) {
+            this.missing.remove(name);
+            return false;
+        }
+
+        return true;
+    }
+
+    public synchronized int size() {
+        return this.registry.size();
+    }
+
+    /**
+     * Evicts the tables that have been unused for longer than the idle ttl.
+     */
+    public synchronized void expire() {
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the tables evicted since the previous call. Once returned, a table
+     * can no longer be revived and the caller is responsible for writing its
+     * remaining rows and detaching it from its writer.
+     */
+    public synchronized List<TableInfo> takeEvicted() {
+        if (this.evicted.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+
+        List<TableInfo> out = new ArrayList<>(this.evicted.values());
+        this.evicted.clear();
+        return out;
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<String, TableInfo>> it = this.registry.entrySet().iterator();
+
+        // Entries are in access order, so the candidates for eviction come first
+        while (it.hasNext()) {
+            Map.Entry<String, TableInfo> e = it.next();
+
+            boolean full = this.maxEntries > 0 && this.registry.size() > this.maxEntries;
+            boolean idle = this.idleTtlMs > 0 && now - e.getValue().getLastAccess() > this.idleTtlMs;
+            if (!full && !idle) {
+                break;
+            }
+
+            log.debug("Evicting table {} from TableRegistry", e.getKey());
+            this.evicted.put(e.getKey(), e.getValue());
+            it.remove();
+        }
     }
 };
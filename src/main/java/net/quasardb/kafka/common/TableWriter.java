@@ -0,0 +1,193 @@
+package net.quasardb.kafka.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import net.quasardb.kafka.common.metrics.TaskMetrics;
+import net.quasardb.qdb.Session;
+import net.quasardb.qdb.ts.Table;
+import net.quasardb.qdb.ts.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns a single QuasarDB Writer together with the tables registered with it.
+ * Access to the underlying writer is synchronized, as a writer is shared between
+ * the task thread and the flush threads.
+ *
+ * A QuasarDB writer cannot forget about a table once it was added, so tables
+ * that are detached keep occupying the writer. Once detached tables outnumber
+ * the attached ones, the writer is flushed and replaced by a fresh writer for
+ * the remaining tables.
+ */
+public class TableWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(TableWriter.class);
+
+    private final Session session;
+    private final int id;
+    private final boolean async;
+    private final boolean autoFlush;
+    private final TableBuffer.Order order;
+    private final boolean flushPerShard;
+    private final TaskMetrics metrics;
+
+    private Writer writer;
+    private final Set<TableInfo> tables = new LinkedHashSet<>();
+    private int detached;
+
+    public TableWriter(Session session, int id, boolean async, boolean autoFlush) {
+        this(session, id, async, autoFlush, TableBuffer.Order.ARRIVAL, false, null);
+    }
+
+    /**
+     * @param order Order in which buffered rows are written.
+     * @param flushPerShard Whether to flush every time the buffered rows of a
+     *                      table move on to the next shard.
+     * @param metrics Metrics to account drained rows in, or null.
+     */
+    public TableWriter(Session session, int id, boolean async, boolean autoFlush,
+                       TableBuffer.Order order, boolean flushPerShard, TaskMetrics metrics) {
+        this.session = session;
+        this.id = id;
+        this.async = async;
+        this.autoFlush = autoFlush;
+        this.order = order;
+        this.flushPerShard = flushPerShard;
+        this.metrics = metrics;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Registers a table with this writer, creating the writer when this is the
+     * first table, and assigns the table its offset inside the writer.
+     */
+    public synchronized void register(TableInfo t) {
+        Table table = t.getTable();
+
+        if (this.writer == null) {
+            log.debug("Initializing Writer {} (Async:{} & AutoFlush:{})", this.id, this.async, this.autoFlush);
+            if (this.autoFlush) {
+                if (this.async)
+                    this.writer = Table.asyncAutoFlushWriter(this.session, table);
+                else
+                    this.writer = Table.autoFlushWriter(this.session, table);
+
+            } else if (this.async)
+                this.writer = Table.asyncWriter(this.session, table);
+            else
+                this.writer = Table.writer(this.session, table);
+        } else {
+            log.debug("Writer {} already initialized, adding extra table", this.id);
+            this.writer.extraTables(table);
+        }
+
+        this.tables.add(t);
+        t.setWriter(this);
+        t.setOffset(this.writer.tableIndexByName(table.getName()));
+
+        if (this.metrics != null) {
+            this.metrics.registerTable(table.getName(), t.getMetrics());
+        }
+    }
+
+    /**
+     * Detaches a table from this writer. Rows of the table that were already
+     * appended are still written by the next flush, rows still buffered in the
+     * table must be drained before.
+     */
+    public synchronized void detach(TableInfo t) throws IOException {
+        if (!this.tables.remove(t)) {
+            return;
+        }
+
+        t.setWriter(null);
+        t.setOffset(-1);
+
+        if (this.metrics != null) {
+            this.metrics.unregisterTable(t.getTable().getName());
+        }
+
+        if (++this.detached > this.tables.size()) {
+            rotate();
+        }
+    }
+
+    /**
+     * Flushes and closes the current writer, and registers all attached tables
+     * with a new writer. This assigns new offsets to those tables.
+     */
+    private void rotate() throws IOException {
+        log.info("Rotating writer {}: {} tables attached, {} detached", this.id, this.tables.size(), this.detached);
+
+        if (this.writer != null) {
+            this.writer.flush();
+            try {
+                this.writer.close();
+            } catch (Exception e) {
+                throw e instanceof IOException ? (IOException) e : new IOException("Unable to close writer " + this.id, e);
+            }
+            this.writer = null;
+        }
+
+        List<TableInfo> attached = new ArrayList<>(this.tables);
+        this.tables.clear();
+        this.detached = 0;
+
+        for (TableInfo t : attached) {
+            register(t);
+        }
+    }
+
+    /**
+     * The underlying writer, for appending rows directly. Only valid once a
+     * table was registered, and only to be used from the task thread while no
+     * flush is in progress.
+     */
+    public Writer getWriter() {
+        return this.writer;
+    }
+
+    /**
+     * Pushes buffered rows of a table registered with this writer.
+     */
+    public synchronized void drain(TableInfo t, TableBuffer b) throws IOException {
+        int rows = b.size();
+        int disordered = b.disorder();
+
+        b.drainTo(this.writer, t.getOffset(), this.order, t.getShardSize() * 1_000_000L, this.flushPerShard);
+
+        t.getMetrics().drained(rows, disordered);
+        if (this.metrics != null) {
+            this.metrics.drained(rows, disordered);
+        }
+    }
+
+    /**
+     * Pushes buffered rows of tables registered with this writer and flushes it.
+     */
+    public synchronized void flush(List<TableInfo> tables, List<TableBuffer> buffers) throws IOException {
+        for (int i = 0; i < tables.size(); ++i) {
+            drain(tables.get(i), buffers.get(i));
+        }
+
+        if (this.writer != null) {
+            log.debug("Flushing writer {}", this.id);
+            this.writer.flush();
+        }
+    }
+
+    public synchronized void close() throws Exception {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+        this.tables.clear();
+        this.detached = 0;
+    }
+}
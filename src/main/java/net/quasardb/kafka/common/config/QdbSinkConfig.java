@@ -27,6 +27,11 @@ public class QdbSinkConfig extends AbstractConfig {
     public static final String TABLE_FROM_CUSTOM_RESOLVER= "qdb.table_from_custom_resolver";
     public static final String TABLE_FROM_COMPOSITE_COLUMNS_CONFIG = "qdb.table_from_columns";
     public static final String TABLE_FROM_COMPOSITE_COLUMNS_DELIM_CONFIG = "qdb.table_from_columns_delimiter";
+    public static final String TABLE_FROM_HEADER_CONFIG = "qdb.table_from_header";
+    public static final String TABLE_TEMPLATE_CONFIG = "qdb.table_template";
+    public static final String TABLE_ROUTES_CONFIG = "qdb.table_routes";
+    public static final String TABLE_FROM_KEY_CONFIG = "qdb.table_from_key";
+    public static final String TABLE_FROM_KEY_FIELD_CONFIG = "qdb.table_from_key_field";
     public static final String TABLE_AUTOCREATE_CONFIG = "qdb.table_autocreate";
     public static final String TABLE_AUTOCREATE_TAGS_CONFIG = "qdb.table_autocreate_tags";
     public static final String TABLE_AUTOCREATE_TAGS_COLUMN_CONFIG = "qdb.table_autocreate_tags_column";
@@ -35,19 +40,63 @@ public class QdbSinkConfig extends AbstractConfig {
     public static final String TABLE_AUTOCREATE_SKELETON_COLUMN_CONFIG = "qdb.table_autocreate_skeleton_column";
     public static final String TABLE_AUTOCREATE_SKELETON_CUSTOM_RESOLVER = "qdb.table_autocreate_skeleton_custom_resolver";
     public static final String TABLE_AUTOCREATE_SKELETON_SUFFIX_CONFIG = "qdb.table_autocreate_skeleton_suffix";
+    public static final String TABLE_AUTOCREATE_FROM_SCHEMA_CONFIG = "qdb.table_autocreate_from_schema";
+    public static final String TABLE_AUTOCREATE_SKELETON_REFRESH_MS_CONFIG = "qdb.table_autocreate_skeleton_refresh_ms";
     public static final String TABLE_AUTOCREATE_SHARD_SIZE_CONFIG = "qdb.table_autocreate_shard_size";
     public static final String TABLE_AUTOCREATE_SHARD_SIZE_COLUMN_CONFIG = "qdb.table_autocreate_shard_size_column";
     public static final String TABLE_AUTOCREATE_SHARD_SIZE_CUSTOM_RESOLVER = "qdb.table_autocreate_shard_size_custom_resolver";
     public static final String TIMESTAMP_FROM_COLUMN_CONFIG = "qdb.timestamp_from_column";
     public static final String TIMESTAMP_FROM_COLUMN_UNIT_CONFIG = "qdb.timestamp_from_column_unit";
+    public static final String TIMESTAMP_FROM_HEADER_CONFIG = "qdb.timestamp_from_header";
     public static final String COLUMN_FROM_COLUMN_CONFIG = "qdb.column_from_column";
     public static final String COLUMN_FROM_COMPOSITE_COLUMNS_CONFIG = "qdb.column_from_columns";
     public static final String COLUMN_FROM_COMPOSITE_COLUMNS_DELIM_CONFIG = "qdb.column_from_columns_delimiter";
+    public static final String COLUMN_FROM_HEADER_CONFIG = "qdb.column_from_header";
+    public static final String COLUMN_FROM_KEY_CONFIG = "qdb.column_from_key";
     public static final String VALUE_COLUMN_CONFIG = "qdb.value_column";
     public static final String VALUE_FROM_COLUMN_CONFIG = "qdb.value_from_column";
+    public static final String VALUE_RAW_JSON_CONFIG = "qdb.value_raw_json";
+    public static final String COLUMN_COALESCE_WINDOW_CONFIG = "qdb.column_coalesce_window";
     public static final String CUSTOM_RECORD_WRITER= "qdb.record_writer_custom";
+    public static final String EXPLODE_TIMESTAMPS_FIELD_CONFIG = "qdb.explode_timestamps_field";
+    public static final String EXPLODE_POINTS_FIELD_CONFIG = "qdb.explode_points_field";
+    public static final String EXPLODE_POINTS_TIMESTAMP_FIELD_CONFIG = "qdb.explode_points_timestamp_field";
     public static final String WRITER_MODE_ASYNC ="qdb.writer_mode_async";
     public static final String WRITER_MODE_AUTOFLUSH ="qdb.writer_mode_autoflush";
+    public static final String WRITER_COUNT = "qdb.writer_count";
+    public static final String WRITER_GROUPS = "qdb.writer_groups";
+    public static final String PUT_MODE_BATCHED = "qdb.put_mode_batched";
+    public static final String BUFFER_TABLE_MAX_ROWS = "qdb.buffer_table_max_rows";
+    public static final String BUFFER_SORT_BY_TIMESTAMP = "qdb.buffer_sort_by_timestamp";
+    public static final String BUFFER_GROUP_BY_SHARD = "qdb.buffer_group_by_shard";
+    public static final String FLUSH_PER_SHARD = "qdb.flush_per_shard";
+    public static final String FLUSH_MODE_ASYNC = "qdb.flush_mode_async";
+    public static final String FLUSH_MAX_BUFFERED_ROWS = "qdb.flush_max_buffered_rows";
+    public static final String FLUSH_MAX_BUFFERED_BYTES = "qdb.flush_max_buffered_bytes";
+    public static final String FLUSH_LINGER_MS = "qdb.flush_linger_ms";
+    public static final String MEMORY_BUDGET_BYTES = "qdb.memory_budget_bytes";
+    public static final String MEMORY_RESUME_RATIO = "qdb.memory_resume_ratio";
+    public static final String TABLE_PREWARM_THREADS = "qdb.table_prewarm_threads";
+    public static final String TABLE_REGISTRY_MAX_ENTRIES = "qdb.table_registry_max_entries";
+    public static final String TABLE_REGISTRY_IDLE_TTL_MS = "qdb.table_registry_idle_ttl_ms";
+    public static final String TABLE_MISSING_TTL_MS = "qdb.table_missing_ttl_ms";
+    public static final String TABLE_CREATE_THREADS = "qdb.table_create_threads";
+    public static final String TABLE_CREATE_MAX_PARKED_RECORDS = "qdb.table_create_max_parked_records";
+    public static final String CONVERSION_PARALLELISM = "qdb.conversion_parallelism";
+    public static final String CONVERSION_CHUNK_SIZE = "qdb.conversion_chunk_size";
+    public static final String DEDUP_WINDOW_RECORDS = "qdb.dedup_window_records";
+    public static final String DEDUP_FALSE_POSITIVE_RATE = "qdb.dedup_false_positive_rate";
+
+    /**
+     * Name of the connector, set by Connect.
+     */
+    public static final String CONNECTOR_NAME = "name";
+
+    /**
+     * Id of a task among the tasks of its connector, set by the connector in
+     * the configuration of every task rather than by users.
+     */
+    public static final String TASK_ID = "qdb.task_id";
 
     public static ConfigDef BASE_CONFIG = baseConfigDef();
 
@@ -112,6 +161,31 @@ public class QdbSinkConfig extends AbstractConfig {
                         "",
                         Importance.MEDIUM,
                         "Optional delimiter to use for joining columns into a single table name.")
+                .define(TABLE_TEMPLATE_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Template to build table names from, in which ${topic}, ${key}, ${field:name} and ${header:name} are replaced by the topic, the key, a field of the value and a header of the record. For example: ${topic}_${field:site}.")
+                .define(TABLE_ROUTES_CONFIG,
+                        Type.LIST,
+                        null,
+                        Importance.MEDIUM,
+                        "Routes from topics to tables, as a list of 'regex=template' pairs. The first regular expression that matches the whole topic selects the table name template. Topics that match no route use qdb.table_template when provided. A regular expression holding a '=' or ',' escapes it with a backslash, as '\\=' or '\\,', which is removed before the expression is compiled.")
+                .define(TABLE_FROM_HEADER_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Name of the Kafka header to acquire table name from. Does not require the record value to be structured.")
+                .define(TABLE_FROM_KEY_CONFIG,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.MEDIUM,
+                        "When true, uses the record key as QuasarDB table identifier.")
+                .define(TABLE_FROM_KEY_FIELD_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Identifier of the field of a structured record key to acquire table name from.")
                 .define(TABLE_AUTOCREATE_CONFIG,
                         Type.BOOLEAN,
                         false,
@@ -154,6 +228,17 @@ public class QdbSinkConfig extends AbstractConfig {
                         null,
                         Importance.MEDIUM,
                         "When a skeleton table is derived from a column's value through qdb.table_autocreate_skeleton_column, this allows adding an additional suffix to those.")
+                .define(TABLE_AUTOCREATE_FROM_SCHEMA_CONFIG,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.MEDIUM,
+                        "When true, autocreated tables get a column for every field of the record's schema instead of copying a skeleton table: INT64 becomes int64, FLOAT64 double, STRING and BYTES blob, and the Timestamp logical type timestamp. Requires records with a struct schema.")
+                .define(TABLE_AUTOCREATE_SKELETON_REFRESH_MS_CONFIG,
+                        Type.LONG,
+                        60000L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "Time in milliseconds the column layout of a skeleton table is cached before it is read again. Set to 0 to read the skeleton for every table created.")
                 .define(TABLE_AUTOCREATE_TAGS_CONFIG,
                         Type.LIST,
                         null,
@@ -178,9 +263,14 @@ public class QdbSinkConfig extends AbstractConfig {
                 .define(TIMESTAMP_FROM_COLUMN_UNIT_CONFIG,
                         Type.STRING,
                         TimeUnit.MILLISECONDS.name(),
-                        ValidString.in(of(TimeUnit.MILLISECONDS, TimeUnit.MICROSECONDS, TimeUnit.NANOSECONDS).map(TimeUnit::name).toArray(String[]::new)),
+                        ValidString.in(of(TimeUnit.values()).map(TimeUnit::name).toArray(String[]::new)),
                         Importance.MEDIUM,
-                        "Allows providing of a TimeUnit precision for timespec column.")
+                        "Allows providing of a TimeUnit precision for timespec column, any of DAYS, HOURS, MINUTES, SECONDS, MILLISECONDS, MICROSECONDS or NANOSECONDS.")
+                .define(TIMESTAMP_FROM_HEADER_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Allows providing of a Kafka header which will be used to create row timespec, in the precision of qdb.timestamp_from_column_unit.")
                 .define(COLUMN_FROM_COLUMN_CONFIG,
                         Type.STRING,
                         null,
@@ -196,22 +286,58 @@ public class QdbSinkConfig extends AbstractConfig {
                         "",
                         Importance.MEDIUM,
                         "Optional delimiter to use for joining columns into a single column name.")
+                .define(COLUMN_FROM_HEADER_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "For single column/value insertions: name of the Kafka header to acquire column name from.")
+                .define(COLUMN_FROM_KEY_CONFIG,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.MEDIUM,
+                        "For single column/value insertions: when true, uses the record key as column name.")
                 .define(VALUE_COLUMN_CONFIG,
                         Type.STRING,
                         null,
                         Importance.MEDIUM,
                         "For single column/value insertions: identifier of the column to acquire value from. For example, if set to 'value', the Kafka connector will always look in the column 'value' to find out which value to store.")
+                .define(VALUE_RAW_JSON_CONFIG,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.MEDIUM,
+                        "When true, record values are raw JSON objects as produced by the ByteArrayConverter or StringConverter. Their top-level fields are parsed directly instead of through a Map built by the JsonConverter, which avoids most allocations for schemaless JSON. Nested objects and arrays are ignored.")
                 .define(VALUE_FROM_COLUMN_CONFIG,
                         Type.STRING,
                         null,
                         Importance.MEDIUM,
                         "For single column/value insertions: identifier of the column to use as column identifier to acquire value from. For example, if set to 'thecol', the Kafka connector will look up the value of 'thecol', and use that value to retrieve the value, i.e. it allows an additional indirection.")
+                .define(COLUMN_COALESCE_WINDOW_CONFIG,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "For single column/value insertions: when greater than 0, values for the same table and timestamp are merged into a single row. Buffered values are merged into a row with the same timestamp among the last this many rows of the table. Without qdb.buffer_table_max_rows, values are merged the same way within the block of records of a table written at once, which requires qdb.put_mode_batched. Ignored when neither is set.")
                 .define(CUSTOM_RECORD_WRITER,
                         Type.CLASS,
                         null,
                         ClassValidator.impl(RecordWriter.class),
                         Importance.MEDIUM,
                         "Class instance of Record Writer used to map Connect data to QuasarDB row.")
+                .define(EXPLODE_TIMESTAMPS_FIELD_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Identifier of an array field holding many timestamps, which writes every record as one row per timestamp. Every column is read from an array field of the same length, or from a scalar field whose value is used for all rows. Timestamps are in the precision of qdb.timestamp_from_column_unit, or ISO-8601 strings.")
+                .define(EXPLODE_POINTS_FIELD_CONFIG,
+                        Type.STRING,
+                        null,
+                        Importance.MEDIUM,
+                        "Identifier of an array field holding points, which writes every record as one row per point. Every point is a struct or map holding a timestamp and the columns of its row. Cannot be used in combination with qdb.explode_timestamps_field.")
+                .define(EXPLODE_POINTS_TIMESTAMP_FIELD_CONFIG,
+                        Type.STRING,
+                        "ts",
+                        Importance.MEDIUM,
+                        "Identifier of the field of a point holding its timestamp, when using qdb.explode_points_field.")
                 .define(WRITER_MODE_ASYNC,
                         Type.BOOLEAN,
                         true,
@@ -222,6 +348,138 @@ public class QdbSinkConfig extends AbstractConfig {
                         false,
                         Importance.MEDIUM,
                         "Specify if writer is in autoflush mode.")
+                .define(WRITER_COUNT,
+                        Type.INT,
+                        1,
+                        ConfigDef.Range.atLeast(1),
+                        Importance.LOW,
+                        "Number of writers per task. Tables are partitioned over the writers, which are flushed concurrently.")
+                .define(WRITER_GROUPS,
+                        Type.LIST,
+                        null,
+                        Importance.LOW,
+                        "Optional list of regular expressions on table names: tables matching the n-th expression use writer n, modulo qdb.writer_count. Other tables are distributed over the writers by hash of their name.")
+                .define(PUT_MODE_BATCHED,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.LOW,
+                        "When true, records received in a single put are grouped per table and written to the writer as blocks rather than one by one.")
+                .define(BUFFER_TABLE_MAX_ROWS,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, rows are staged in a columnar buffer per table and pushed to the writer on flush, or once a table's buffer holds this many rows. Not supported by custom record writers.")
+                .define(BUFFER_SORT_BY_TIMESTAMP,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.LOW,
+                        "When true, the buffered rows of a table are written in timestamp order rather than in the order they arrived, which helps when partitions of a topic are out of step. Requires qdb.buffer_table_max_rows.")
+                .define(BUFFER_GROUP_BY_SHARD,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.LOW,
+                        "When true, the buffered rows of a table are written grouped per shard, keeping their order within a shard. Shard sizes are taken from the qdb.table_autocreate_shard_size settings, as they cannot be read back from existing tables. Requires qdb.buffer_table_max_rows.")
+                .define(FLUSH_PER_SHARD,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.LOW,
+                        "When true, the writer is flushed every time the buffered rows of a table move on to the next shard, so that every flush touches a single shard per table. Useful for backfills spanning many shards. Requires qdb.buffer_group_by_shard or qdb.buffer_sort_by_timestamp.")
+                .define(FLUSH_MODE_ASYNC,
+                        Type.BOOLEAN,
+                        false,
+                        Importance.LOW,
+                        "When true, buffered rows are flushed on a background thread while new records keep being staged, and only offsets of records that were flushed are committed. Requires qdb.buffer_table_max_rows.")
+                .define(FLUSH_MAX_BUFFERED_ROWS,
+                        Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the task flushes as soon as this many rows were written since the last flush, independent of offset.flush.interval.ms.")
+                .define(FLUSH_MAX_BUFFERED_BYTES,
+                        Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the task flushes as soon as the estimated size of the rows buffered since the last flush reaches this many bytes.")
+                .define(FLUSH_LINGER_MS,
+                        Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the task flushes once the oldest row written since the last flush is this many milliseconds old. Checked whenever records are put.")
+                .define(MEMORY_BUDGET_BYTES,
+                        Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the estimated size of rows that were put but not yet flushed is kept under this budget. With asynchronous flushing, the task's partitions are paused when the budget is exceeded, otherwise the task flushes.")
+                .define(MEMORY_RESUME_RATIO,
+                        Type.DOUBLE,
+                        0.5,
+                        ConfigDef.Range.between(0, 1),
+                        Importance.LOW,
+                        "Fraction of qdb.memory_budget_bytes the in-flight rows have to drop below before paused partitions are resumed.")
+                .define(TABLE_PREWARM_THREADS,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "Number of threads used to look up tables when partitions are assigned, for table resolvers that only depend on the topic such as qdb.table_from_topic or qdb.table. Set to 0 to only look up tables once their first record arrives.")
+                .define(TABLE_REGISTRY_MAX_ENTRIES,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the maximum number of tables a task keeps open. Once exceeded, the least recently used tables are written and detached from their writer.")
+                .define(TABLE_REGISTRY_IDLE_TTL_MS,
+                        Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, tables that received no records for this many milliseconds are written and detached from their writer.")
+                .define(TABLE_MISSING_TTL_MS,
+                        Type.LONG,
+                        5000L,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "Time in milliseconds a table that was not found is remembered as missing. During this time it is not looked up again, but created right away when autocreation is enabled. Set to 0 to look up tables every time.")
+                .define(TABLE_CREATE_THREADS,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, tables that are not known yet are looked up and created on this many background threads. Their records are parked until the table is ready, while records of known tables keep being written.")
+                .define(TABLE_CREATE_MAX_PARKED_RECORDS,
+                        Type.INT,
+                        10000,
+                        ConfigDef.Range.atLeast(1),
+                        Importance.LOW,
+                        "Maximum number of records parked per table while it is being created in the background. Once reached, the task waits for the table to be ready once the rest of the batch was written.")
+                .define(CONVERSION_PARALLELISM,
+                        Type.INT,
+                        1,
+                        ConfigDef.Range.atLeast(1),
+                        Importance.LOW,
+                        "Number of threads used to convert records into rows. When greater than 1, batches larger than qdb.conversion_chunk_size are split into chunks that are converted in parallel, while rows are still handed to the writer in order. Requires qdb.buffer_table_max_rows.")
+                .define(CONVERSION_CHUNK_SIZE,
+                        Type.INT,
+                        1024,
+                        ConfigDef.Range.atLeast(1),
+                        Importance.LOW,
+                        "Number of records converted per chunk when converting in parallel.")
+                .define(DEDUP_WINDOW_RECORDS,
+                        Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        "When greater than 0, the task remembers up to this many rows per partition written since the partition's offsets were last committed, and drops records that Connect delivers again to the same task for rows already written, such as after a retriable failure or when a partition is assigned back to the task. Rows are remembered in memory only, by table, record timestamp and a hash of the record value in a Bloom filter, so replays after a restart or to another task are written again.")
+                .define(DEDUP_FALSE_POSITIVE_RATE,
+                        Type.DOUBLE,
+                        0.000001,
+                        ConfigDef.Range.between(0.000000000001, 0.5),
+                        Importance.LOW,
+                        "Probability that a replayed record which was not written before is dropped as a duplicate. Lower rates use more memory per remembered row. Records that are not replays are never dropped.")
 
                 ;
     }
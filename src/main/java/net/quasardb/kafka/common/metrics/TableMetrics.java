@@ -0,0 +1,31 @@
+package net.quasardb.kafka.common.metrics;
+
+/**
+ * Metrics of a single table, exposed through JMX by the metrics of the task
+ * writing it under
+ * net.quasardb.kafka:type=QdbSinkTable,connector=NAME,task=N,table=TABLE
+ */
+public class TableMetrics implements TableMetricsMBean {
+
+    private volatile long drainedRows;
+    private volatile long disorderedRows;
+
+    /**
+     * Only called by the writer the table is registered with, while holding its
+     * lock.
+     */
+    public void drained(int rows, int disordered) {
+        this.drainedRows += rows;
+        this.disorderedRows += disordered;
+    }
+
+    @Override
+    public long getDrainedRows() {
+        return this.drainedRows;
+    }
+
+    @Override
+    public long getDisorderedRows() {
+        return this.disorderedRows;
+    }
+}
@@ -0,0 +1,15 @@
+package net.quasardb.kafka.common.metrics;
+
+/**
+ * JMX view on the metrics of a single table written by a sink task.
+ */
+public interface TableMetricsMBean {
+
+    long getDrainedRows();
+
+    /**
+     * Number of drained rows that had a lower timestamp than the row staged
+     * before them in the table.
+     */
+    long getDisorderedRows();
+}
@@ -0,0 +1,247 @@
+package net.quasardb.kafka.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.kafka.common.utils.Sanitizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of a single sink task, exposed through JMX under
+ * net.quasardb.kafka:type=QdbSinkTask,connector=NAME,task=N, together with
+ * the metrics of the tables the task writes.
+ */
+public class TaskMetrics implements TaskMetricsMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskMetrics.class);
+
+    /**
+     * What caused the task to flush.
+     */
+    public enum FlushTrigger {
+        /** Connect's offset commit cycle */
+        COMMIT,
+        /** Maximum number of buffered rows of the task */
+        ROWS,
+        /** Maximum number of buffered bytes of the task */
+        BYTES,
+        /** Maximum time rows are allowed to stay buffered */
+        LINGER,
+        /** Maximum number of buffered rows of a single table */
+        TABLE_ROWS,
+        /** In-flight memory budget of the task */
+        MEMORY
+    }
+
+    private final AtomicLongArray flushes = new AtomicLongArray(FlushTrigger.values().length);
+    private volatile FlushTrigger lastFlushTrigger;
+    private volatile long bufferedRows;
+    private volatile long bufferedBytes;
+    private volatile boolean paused;
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong tableEvictions = new AtomicLong();
+    private final AtomicLong drainedRows = new AtomicLong();
+    private final AtomicLong replayedRecordsDropped = new AtomicLong();
+    private final AtomicLong disorderedRows = new AtomicLong();
+
+    private ObjectName name;
+    private String connector;
+    private int task;
+
+    /**
+     * Names of the registered table metrics, by table.
+     */
+    private final Map<String, ObjectName> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the metrics under the name of the connector and the id of the
+     * task, replacing the metrics left behind by a previous instance of the
+     * same task.
+     */
+    public void register(String connector, int task) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            this.connector = connector;
+            this.task = task;
+            this.name = new ObjectName("net.quasardb.kafka:type=QdbSinkTask,connector=" + Sanitizer.jmxSanitize(connector)
+                                       + ",task=" + task);
+            registerReplacing(server, this, this.name);
+        } catch (Exception e) {
+            log.warn("Unable to register task metrics: {}", e.getMessage());
+            this.name = null;
+        }
+    }
+
+    private static void registerReplacing(MBeanServer server, Object mbean, ObjectName name) throws Exception {
+        if (server.isRegistered(name)) {
+            log.debug("Replacing stale metrics {}", name);
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+    }
+
+    public void unregister() {
+        if (this.name == null) {
+            return;
+        }
+
+        for (String table : this.tables.keySet()) {
+            unregisterTable(table);
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+        } catch (Exception e) {
+            log.warn("Unable to unregister task metrics: {}", e.getMessage());
+        } finally {
+            this.name = null;
+        }
+    }
+
+    /**
+     * Registers the metrics of a table written by the task, unless they are
+     * registered already.
+     */
+    public void registerTable(String table, TableMetrics metrics) {
+        if (this.name == null || this.tables.containsKey(table)) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName("net.quasardb.kafka:type=QdbSinkTable,connector=" + Sanitizer.jmxSanitize(this.connector)
+                                              + ",task=" + this.task + ",table=" + Sanitizer.jmxSanitize(table));
+            registerReplacing(ManagementFactory.getPlatformMBeanServer(), metrics, name);
+            this.tables.put(table, name);
+        } catch (Exception e) {
+            log.warn("Unable to register metrics of table {}: {}", table, e.getMessage());
+        }
+    }
+
+    public void unregisterTable(String table) {
+        ObjectName name = this.tables.remove(table);
+        if (name == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            log.warn("Unable to unregister metrics of table {}: {}", table, e.getMessage());
+        }
+    }
+
+    public void flushed(FlushTrigger trigger) {
+        this.flushes.incrementAndGet(trigger.ordinal());
+        this.lastFlushTrigger = trigger;
+    }
+
+    public void buffered(long rows, long bytes) {
+        this.bufferedRows = rows;
+        this.bufferedBytes = bytes;
+    }
+
+    public void paused(boolean paused) {
+        if (paused) {
+            this.pauses.incrementAndGet();
+        }
+        this.paused = paused;
+    }
+
+    public void drained(int rows, int disordered) {
+        this.drainedRows.addAndGet(rows);
+        this.disorderedRows.addAndGet(disordered);
+    }
+
+    public void replayedDropped(int records) {
+        this.replayedRecordsDropped.addAndGet(records);
+    }
+
+    public void evicted(int tables) {
+        this.tableEvictions.addAndGet(tables);
+    }
+
+    public long getFlushes(FlushTrigger trigger) {
+        return this.flushes.get(trigger.ordinal());
+    }
+
+    @Override
+    public long getFlushesByCommit() {
+        return getFlushes(FlushTrigger.COMMIT);
+    }
+
+    @Override
+    public long getFlushesByRows() {
+        return getFlushes(FlushTrigger.ROWS);
+    }
+
+    @Override
+    public long getFlushesByBytes() {
+        return getFlushes(FlushTrigger.BYTES);
+    }
+
+    @Override
+    public long getFlushesByLinger() {
+        return getFlushes(FlushTrigger.LINGER);
+    }
+
+    @Override
+    public long getFlushesByTableRows() {
+        return getFlushes(FlushTrigger.TABLE_ROWS);
+    }
+
+    @Override
+    public long getFlushesByMemory() {
+        return getFlushes(FlushTrigger.MEMORY);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return this.paused;
+    }
+
+    @Override
+    public long getPauses() {
+        return this.pauses.get();
+    }
+
+    @Override
+    public long getDrainedRows() {
+        return this.drainedRows.get();
+    }
+
+    @Override
+    public long getDisorderedRows() {
+        return this.disorderedRows.get();
+    }
+
+    @Override
+    public long getReplayedRecordsDropped() {
+        return this.replayedRecordsDropped.get();
+    }
+
+    @Override
+    public long getTableEvictions() {
+        return this.tableEvictions.get();
+    }
+
+    @Override
+    public String getLastFlushTrigger() {
+        FlushTrigger trigger = this.lastFlushTrigger;
+        return trigger == null ? null : trigger.name();
+    }
+
+    @Override
+    public long getBufferedRows() {
+        return this.bufferedRows;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return this.bufferedBytes;
+    }
+}
@@ -0,0 +1,41 @@
+package net.quasardb.kafka.common.metrics;
+
+/**
+ * JMX view on the metrics of a single sink task.
+ */
+public interface TaskMetricsMBean {
+
+    long getFlushesByCommit();
+
+    long getFlushesByRows();
+
+    long getFlushesByBytes();
+
+    long getFlushesByLinger();
+
+    long getFlushesByTableRows();
+
+    long getFlushesByMemory();
+
+    String getLastFlushTrigger();
+
+    long getBufferedRows();
+
+    long getBufferedBytes();
+
+    boolean isPaused();
+
+    long getPauses();
+
+    long getTableEvictions();
+
+    long getDrainedRows();
+
+    long getReplayedRecordsDropped();
+
+    /**
+     * Number of drained rows that had a lower timestamp than the row staged
+     * before them in the same table.
+     */
+    long getDisorderedRows();
+}
@@ -1,11 +1,13 @@
 package net.quasardb.kafka.common.resolver;
 
+import net.quasardb.kafka.common.JsonFields;
 import net.quasardb.kafka.common.config.QdbSinkConfig;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.sink.SinkRecord;
 
+import java.util.List;
 import java.util.Map;
 
 public abstract class ColumnResolver<T> extends Resolver<T> {
@@ -22,6 +24,15 @@ public abstract class ColumnResolver<T> extends Resolver<T> {
 
     @Override
     public T resolve(SinkRecord record) throws DataException {
+        return resolveColumn(record);
+    }
+
+    /**
+     * Resolves the column of a single record. Unlike resolve(), this is not
+     * overridden, so that subclasses post-processing the values of resolve()
+     * and resolveAll() do not do so twice.
+     */
+    private T resolveColumn(SinkRecord record) throws DataException {
         Schema schema = record.valueSchema();
         Object data = record.value();
 
@@ -31,6 +42,8 @@ public abstract class ColumnResolver<T> extends Resolver<T> {
             value = resolve((Struct) data);
         } else if (data instanceof Map) {
             value = resolve((Map) data);
+        } else if (data instanceof JsonFields) {
+            value = resolve((JsonFields) data);
         } else {
             throw new DataException("record is not Avro schema nor structured json, cannot look up column: " + data.toString());
         }
@@ -40,10 +53,46 @@ public abstract class ColumnResolver<T> extends Resolver<T> {
         return value;
     }
 
+    /**
+     * The records of a batch are expected to share the same kind of value, so
+     * the type of the first record is assumed for all records that follow.
+     */
+    @Override
+    public void resolveAll(List<SinkRecord> records, T[] out) throws DataException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        SinkRecord first = records.get(0);
+        boolean structs = (first.valueSchema() != null && first.value() instanceof Struct);
+        boolean maps = (!structs && first.value() instanceof Map);
+
+        for (int i = 0; i < records.size(); ++i) {
+            SinkRecord record = records.get(i);
+            Object data = record.value();
+
+            if (structs && data instanceof Struct) {
+                out[i] = resolve((Struct) data);
+            } else if (maps && data instanceof Map) {
+                out[i] = resolve((Map) data);
+            } else {
+                out[i] = resolveColumn(record);
+            }
+        }
+    }
+
     private T resolve(Struct data) throws DataException {
         return (T) data.get(this.columnName);
     }
 
+    private T resolve(JsonFields data) throws DataException {
+        final Object value = data.get(this.columnName);
+        if (value == null) {
+            throw new DataException("table column '" + this.columnName + "' not found, cannot resolve: " + columnName);
+        }
+        return (T) value;
+    }
+
     private T resolve(Map data) throws DataException {
         final Object value = data.get(this.columnName);
         if (value == null) {
@@ -9,27 +9,27 @@ import java.util.concurrent.TimeUnit;
 
 public class ColumnTimespecResolver extends Resolver<Timespec> {
 
-    private final TimeUnit unit;
+    private final Resolver<?> resolver;
 
-    private final DefaultColumnResolver<Long> resolver;
+    private final TimespecConverter converter;
 
     public ColumnTimespecResolver(QdbSinkConfig config, String columnName, TimeUnit unit) {
+        this(config, new DefaultColumnResolver<Long>(config, columnName), unit);
+    }
+
+    /**
+     * @param resolver Resolves the timestamp as a number in the given unit, a
+     *                 java.util.Date, or a string holding either a number in
+     *                 the given unit or an ISO-8601 date and time.
+     */
+    public ColumnTimespecResolver(QdbSinkConfig config, Resolver<?> resolver, TimeUnit unit) {
         super(config);
-        this.resolver = new DefaultColumnResolver<Long>(config, columnName);
-        this.unit = unit;
+        this.resolver = resolver;
+        this.converter = new TimespecConverter(unit);
     }
 
     @Override
     public Timespec resolve(SinkRecord record) throws DataException {
-        final Long value = resolver.resolve(record);
-
-        final long timestamp = unit.toNanos(value);
-
-        long seconds = TimeUnit.NANOSECONDS.toSeconds(timestamp);
-        long nanos = timestamp - TimeUnit.SECONDS.toNanos(seconds);
-
-        Timespec ts = new Timespec(seconds, nanos);
-
-        return ts;
+        return this.converter.convert(resolver.resolve(record));
     }
 }
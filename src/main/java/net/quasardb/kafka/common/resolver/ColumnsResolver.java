@@ -1,5 +1,6 @@
 package net.quasardb.kafka.common.resolver;
 
+import net.quasardb.kafka.common.JsonFields;
 import net.quasardb.kafka.common.config.QdbSinkConfig;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Struct;
@@ -14,10 +15,14 @@ public class ColumnsResolver extends Resolver<String> {
     private final String[] columnNames;
     private final String delimiter;
 
+    private final NameCache names = new NameCache();
+    private final ThreadLocal<Object[]> scratch;
+
     public ColumnsResolver(QdbSinkConfig config, List<String> columnNames, String delimiter) {
         super(config);
         this.columnNames = columnNames.toArray(new String[columnNames.size()]);
         this.delimiter = delimiter;
+        this.scratch = ThreadLocal.withInitial(() -> new Object[this.columnNames.length]);
         log.debug("Initializing multi-column resolver for columns: {} with delimiter: {}", columnNames, delimiter);
     }
 
@@ -26,43 +31,66 @@ public class ColumnsResolver extends Resolver<String> {
         Schema schema = record.valueSchema();
         Object data = record.value();
 
-        String[] values;
+        Object[] values = this.scratch.get();
 
         // AVRO or JSON with schema
         if (schema != null && data instanceof Struct) {
-            values = resolve((Struct) data);
+            resolve((Struct) data, values);
         } else if (data instanceof Map) {
-            values = resolve((Map) data);
+            resolve((Map) data, values);
+        } else if (data instanceof JsonFields) {
+            resolve((JsonFields) data, values);
         } else {
             throw new DataException("record is not Avro schema nor structured json, cannot look up column: " + data.toString());
         }
 
-        return String.join(this.delimiter, values);
-    }
+        int hash = NameCache.hash(values);
+        String name = this.names.get(values, hash);
+        if (name == null) {
+            name = join(values);
+            this.names.put(values, hash, name);
+        }
 
-    private String[] resolve(Struct data) throws DataException {
-        String[] values = new String[this.columnNames.length];
+        return name;
+    }
 
-        for (int i = 0; i < this.columnNames.length; ++i) {
-            Object value = data.get(this.columnNames[i]);
-            values[i] = (String) value;
+    private String join(Object[] values) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                b.append(this.delimiter);
+            }
+            b.append((String) values[i]);
         }
 
-        return values;
+        return b.toString();
     }
 
-    private String[] resolve(Map data) throws DataException {
-        String[] values = new String[this.columnNames.length];
+    private void resolve(Struct data, Object[] values) throws DataException {
+        for (int i = 0; i < this.columnNames.length; ++i) {
+            values[i] = data.get(this.columnNames[i]);
+        }
+    }
 
+    private void resolve(JsonFields data, Object[] values) throws DataException {
         for (int i = 0; i < this.columnNames.length; ++i) {
             Object value = data.get(this.columnNames[i]);
             if (value == null) {
                 throw new DataException("table column '" + this.columnNames[i] + "' not found, cannot resolve: " + data.toString());
             }
 
-            values[i] = (String) value;
+            values[i] = value;
         }
+    }
 
-        return values;
+    private void resolve(Map data, Object[] values) throws DataException {
+        for (int i = 0; i < this.columnNames.length; ++i) {
+            Object value = data.get(this.columnNames[i]);
+            if (value == null) {
+                throw new DataException("table column '" + this.columnNames[i] + "' not found, cannot resolve: " + data.toString());
+            }
+
+            values[i] = value;
+        }
     }
 }
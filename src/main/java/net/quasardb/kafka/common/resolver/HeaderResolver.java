@@ -0,0 +1,53 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Resolves a value from a Kafka header of the record, which does not require
+ * the record value to be looked at. When a header occurs more than once, the
+ * last one is used.
+ */
+public class HeaderResolver<T> extends Resolver<T> {
+
+    private final String headerName;
+    private final boolean names;
+
+    public HeaderResolver(QdbSinkConfig config, String headerName) {
+        this(config, headerName, false);
+    }
+
+    /**
+     * @param names Whether the header holds a table or column name, in which
+     *              case headers that are not strings, such as the numbers
+     *              header converters produce, are resolved as their string
+     *              representation.
+     */
+    public HeaderResolver(QdbSinkConfig config, String headerName, boolean names) {
+        super(config);
+        this.headerName = headerName;
+        this.names = names;
+        log.debug("Initializing header resolver for header: {}", headerName);
+    }
+
+    @Override
+    public T resolve(SinkRecord record) throws DataException {
+        Header header = record.headers().lastWithName(this.headerName);
+        if (header == null || header.value() == null) {
+            throw new DataException("header '" + this.headerName + "' not found, cannot resolve record at offset " + record.kafkaOffset());
+        }
+
+        Object value = header.value();
+        if (value instanceof byte[]) {
+            value = new String((byte[]) value, StandardCharsets.UTF_8);
+        } else if (this.names && !(value instanceof String)) {
+            value = value.toString();
+        }
+
+        return (T) value;
+    }
+}
@@ -0,0 +1,71 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Resolves a value from the key of the record, either the key itself or one
+ * of its fields when the key is structured.
+ */
+public class KeyResolver<T> extends Resolver<T> {
+
+    private final String fieldName;
+    private final boolean names;
+
+    /**
+     * @param fieldName Field of the key to resolve, or null to resolve the key
+     *                  itself.
+     */
+    public KeyResolver(QdbSinkConfig config, String fieldName) {
+        this(config, fieldName, false);
+    }
+
+    /**
+     * @param names Whether the key holds a table or column name, in which case
+     *              keys that are not strings, such as the numbers key
+     *              converters produce, are resolved as their string
+     *              representation.
+     */
+    public KeyResolver(QdbSinkConfig config, String fieldName, boolean names) {
+        super(config);
+        this.fieldName = fieldName;
+        this.names = names;
+        log.debug("Initializing key resolver for field: {}", fieldName);
+    }
+
+    @Override
+    public T resolve(SinkRecord record) throws DataException {
+        Object key = record.key();
+        if (key == null) {
+            throw new DataException("record at offset " + record.kafkaOffset() + " has no key, cannot resolve");
+        }
+
+        Object value;
+        if (this.fieldName == null) {
+            value = key;
+        } else if (key instanceof Struct) {
+            value = ((Struct) key).get(this.fieldName);
+        } else if (key instanceof Map) {
+            value = ((Map) key).get(this.fieldName);
+        } else {
+            throw new DataException("record key is not Avro schema nor structured json, cannot look up field: " + this.fieldName);
+        }
+
+        if (value == null) {
+            throw new DataException("key field '" + this.fieldName + "' not found, cannot resolve: " + key.toString());
+        }
+
+        if (value instanceof byte[]) {
+            value = new String((byte[]) value, StandardCharsets.UTF_8);
+        } else if (this.names && !(value instanceof String)) {
+            value = value.toString();
+        }
+
+        return (T) value;
+    }
+}
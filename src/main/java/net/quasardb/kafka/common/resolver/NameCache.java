@@ -0,0 +1,60 @@
+package net.quasardb.kafka.common.resolver;
+
+import java.util.Arrays;
+
+/**
+ * Cache of names composed out of several parts, so that composing a name that
+ * was composed before returns the same String instance without building it
+ * again.
+ *
+ * The cache is direct-mapped and of fixed size: a name replaces whichever
+ * name occupied its slot. Safe to use from multiple threads, as entries are
+ * immutable once published.
+ */
+class NameCache {
+
+    private static final int SIZE = 4096;
+
+    private static final class Entry {
+        final int hash;
+        final Object[] parts;
+        final String name;
+
+        Entry(int hash, Object[] parts, String name) {
+            this.hash = hash;
+            this.parts = parts;
+            this.name = name;
+        }
+    }
+
+    private final Entry[] entries = new Entry[SIZE];
+
+    static int hash(Object[] parts) {
+        int h = 1;
+        for (Object x : parts) {
+            h = 31 * h + (x == null ? 0 : x.hashCode());
+        }
+
+        // Spread the high bits, as the slot is taken from the low bits
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The name composed out of these parts, or null when not cached.
+     */
+    String get(Object[] parts, int hash) {
+        Entry e = this.entries[hash & (SIZE - 1)];
+        if (e != null && e.hash == hash && Arrays.equals(e.parts, parts)) {
+            return e.name;
+        }
+
+        return null;
+    }
+
+    /**
+     * Caches a name. The parts are copied, so that the caller may reuse them.
+     */
+    void put(Object[] parts, int hash, String name) {
+        this.entries[hash & (SIZE - 1)] = new Entry(hash, parts.clone(), name);
+    }
+}
@@ -6,6 +6,8 @@ import org.apache.kafka.connect.sink.SinkRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public abstract class Resolver<T> {
 
     protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -18,4 +20,27 @@ public abstract class Resolver<T> {
 
     abstract public T resolve(SinkRecord record) throws DataException;
 
+    /**
+     * Resolves the value of every record of a batch into `out`, which is at
+     * least as long as the batch. The default implementation resolves them one
+     * by one, implementations can override this to do work once per batch
+     * rather than once per record.
+     */
+    public void resolveAll(List<SinkRecord> records, T[] out) throws DataException {
+        for (int i = 0; i < records.size(); ++i) {
+            out[i] = resolve(records.get(i));
+        }
+    }
+
+    /**
+     * Resolves the value for all records of a topic, for resolvers whose result
+     * only depends on the topic. Allows values to be known before any record
+     * was received.
+     *
+     * @return The resolved value, or null when it depends on the record itself.
+     */
+    public T resolveTopic(String topic) {
+        return null;
+    }
+
 }
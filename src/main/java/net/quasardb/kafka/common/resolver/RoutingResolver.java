@@ -0,0 +1,86 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Routes records to a name template depending on their topic. Routes are
+ * regular expressions matched against the whole topic, in order, and the
+ * first matching route is used. The route of a topic is only looked up once.
+ */
+public class RoutingResolver extends Resolver<String> {
+
+    private final Pattern[] patterns;
+    private final Resolver<String>[] targets;
+    private final Resolver<String> fallback;
+
+    private final Map<String, Resolver<String>> routes = new ConcurrentHashMap<>();
+
+    /**
+     * @param routes Templates by regular expression, in the order they should
+     *               be matched.
+     * @param fallback Resolver for topics that match no route, or null when
+     *                 such topics are an error.
+     */
+    public RoutingResolver(QdbSinkConfig config, Map<String, String> routes, Resolver<String> fallback) {
+        super(config);
+        this.patterns = new Pattern[routes.size()];
+        this.targets = new Resolver[routes.size()];
+        this.fallback = fallback;
+
+        int i = 0;
+        for (Map.Entry<String, String> e : routes.entrySet()) {
+            this.patterns[i] = Pattern.compile(e.getKey());
+            this.targets[i] = new TemplateResolver(config, e.getValue());
+            ++i;
+        }
+
+        log.debug("Initializing routing resolver with routes: {}", routes);
+    }
+
+    @Override
+    public String resolve(SinkRecord record) throws DataException {
+        Resolver<String> r = route(record.topic());
+        if (r == null) {
+            throw new DataException("No table route matches topic: " + record.topic());
+        }
+
+        return r.resolve(record);
+    }
+
+    @Override
+    public String resolveTopic(String topic) {
+        Resolver<String> r = route(topic);
+        return r == null ? null : r.resolveTopic(topic);
+    }
+
+    private Resolver<String> route(String topic) {
+        if (topic == null) {
+            return this.fallback;
+        }
+
+        Resolver<String> r = this.routes.get(topic);
+        if (r != null) {
+            return r;
+        }
+
+        r = this.fallback;
+        for (int i = 0; i < this.patterns.length; ++i) {
+            if (this.patterns[i].matcher(topic).matches()) {
+                r = this.targets[i];
+                break;
+            }
+        }
+
+        if (r != null) {
+            this.routes.putIfAbsent(topic, r);
+        }
+
+        return r;
+    }
+}
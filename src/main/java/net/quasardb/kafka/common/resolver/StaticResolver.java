@@ -4,6 +4,9 @@ import net.quasardb.kafka.common.config.QdbSinkConfig;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.sink.SinkRecord;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class StaticResolver<T> extends Resolver<T> {
 
     private T value;
@@ -19,4 +22,14 @@ public class StaticResolver<T> extends Resolver<T> {
     public T resolve(SinkRecord record) throws DataException {
         return this.value;
     }
+
+    @Override
+    public void resolveAll(List<SinkRecord> records, T[] out) throws DataException {
+        Arrays.fill(out, 0, records.size(), this.value);
+    }
+
+    @Override
+    public T resolveTopic(String topic) {
+        return this.value;
+    }
 }
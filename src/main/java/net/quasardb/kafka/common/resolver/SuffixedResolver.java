@@ -8,6 +8,7 @@ import org.apache.kafka.connect.sink.SinkRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
 
 public class SuffixedResolver extends ColumnResolver<String> {
@@ -29,6 +30,15 @@ public class SuffixedResolver extends ColumnResolver<String> {
        return this.handleSuffix(value, this.suffix);
     }
 
+    @Override
+    public void resolveAll(List<SinkRecord> records, String[] out) throws DataException {
+        super.resolveAll(records, out);
+
+        for (int i = 0; i < records.size(); ++i) {
+            out[i] = this.handleSuffix(out[i], this.suffix);
+        }
+    }
+
     protected String handleSuffix(String result, String suffix){
         return result + suffix;
     }
@@ -0,0 +1,160 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves a name from a template such as `${topic}_${field:site}`, in which
+ * the placeholders are replaced by:
+ *
+ *  - ${topic}: the topic of the record;
+ *  - ${key}: the key of the record;
+ *  - ${field:name}: a field of the record value;
+ *  - ${header:name}: a Kafka header of the record.
+ *
+ * Parts are joined as text: bytes are decoded as UTF-8, and parts that have
+ * no textual form, such as a Struct, are rejected.
+ *
+ * The template is parsed once. Templates that only depend on the topic are
+ * resolved once per topic, others are looked up in a cache of names so that
+ * resolving a name seen before does not build a new String.
+ */
+public class TemplateResolver extends Resolver<String> {
+
+    private final Resolver<?>[] parts;
+    private final boolean topicOnly;
+
+    private final Map<String, String> topicNames = new ConcurrentHashMap<>();
+    private final NameCache names = new NameCache();
+    private final ThreadLocal<Object[]> scratch;
+
+    public TemplateResolver(QdbSinkConfig config, String template) {
+        super(config);
+        this.parts = compile(config, template);
+        this.scratch = ThreadLocal.withInitial(() -> new Object[this.parts.length]);
+
+        boolean topicOnly = true;
+        for (Resolver<?> part : this.parts) {
+            topicOnly &= (part instanceof StaticResolver || part instanceof TopicResolver);
+        }
+        this.topicOnly = topicOnly;
+
+        log.debug("Initializing template resolver for template: {}", template);
+    }
+
+    @Override
+    public String resolve(SinkRecord record) throws DataException {
+        if (this.topicOnly && record.topic() != null) {
+            return resolveTopic(record.topic());
+        }
+
+        Object[] values = this.scratch.get();
+        for (int i = 0; i < this.parts.length; ++i) {
+            values[i] = part(this.parts[i].resolve(record));
+        }
+
+        int hash = NameCache.hash(values);
+        String name = this.names.get(values, hash);
+        if (name == null) {
+            name = join(values);
+            this.names.put(values, hash, name);
+        }
+
+        return name;
+    }
+
+    @Override
+    public String resolveTopic(String topic) {
+        if (!this.topicOnly || topic == null) {
+            return null;
+        }
+
+        String name = this.topicNames.get(topic);
+        if (name == null) {
+            Object[] values = new Object[this.parts.length];
+            for (int i = 0; i < this.parts.length; ++i) {
+                values[i] = this.parts[i].resolveTopic(topic);
+            }
+
+            name = join(values);
+            this.topicNames.putIfAbsent(topic, name);
+        }
+
+        return name;
+    }
+
+    private static Object part(Object x) throws DataException {
+        if (x instanceof byte[]) {
+            return new String((byte[]) x, StandardCharsets.UTF_8);
+        }
+
+        if (x == null || x instanceof String || x instanceof Number || x instanceof Boolean || x instanceof Character) {
+            return x;
+        }
+
+        throw new DataException("Cannot use a " + x.getClass().getSimpleName() + " in a name: " + x);
+    }
+
+    private static String join(Object[] values) {
+        StringBuilder b = new StringBuilder();
+        for (Object x : values) {
+            b.append(x);
+        }
+
+        return b.toString();
+    }
+
+    private static Resolver<?>[] compile(QdbSinkConfig config, String template) throws DataException {
+        List<Resolver<?>> out = new ArrayList<>();
+
+        int i = 0;
+        while (i < template.length()) {
+            int start = template.indexOf("${", i);
+            if (start == -1) {
+                out.add(new StaticResolver<>(config, template.substring(i)));
+                break;
+            }
+
+            if (start > i) {
+                out.add(new StaticResolver<>(config, template.substring(i, start)));
+            }
+
+            int end = template.indexOf('}', start);
+            if (end == -1) {
+                throw new DataException("Incorrectly formatted template, unterminated placeholder: " + template);
+            }
+
+            out.add(placeholder(config, template.substring(start + 2, end), template));
+            i = end + 1;
+        }
+
+        return out.toArray(new Resolver<?>[out.size()]);
+    }
+
+    private static Resolver<?> placeholder(QdbSinkConfig config, String x, String template) throws DataException {
+        if (x.equals("topic")) {
+            return new TopicResolver(config);
+        }
+
+        if (x.equals("key")) {
+            return new KeyResolver<>(config, null);
+        }
+
+        if (x.startsWith("field:") && x.length() > 6) {
+            return new DefaultColumnResolver<>(config, x.substring(6));
+        }
+
+        if (x.startsWith("header:") && x.length() > 7) {
+            return new HeaderResolver<>(config, x.substring(7));
+        }
+
+        throw new DataException("Incorrectly formatted template, unknown placeholder '${" + x + "}': " + template);
+    }
+}
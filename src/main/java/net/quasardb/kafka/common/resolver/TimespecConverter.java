@@ -0,0 +1,81 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.qdb.ts.Timespec;
+import org.apache.kafka.connect.errors.DataException;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts timestamps given as a number in a fixed unit, a java.util.Date, or
+ * a string holding either a number in that unit or an ISO-8601 date and time.
+ * Safe to use from multiple threads.
+ */
+public class TimespecConverter {
+
+    private final TimeUnit unit;
+
+    private final TimestampParser parser = new TimestampParser();
+
+    public TimespecConverter(TimeUnit unit) {
+        this.unit = unit;
+    }
+
+    public Timespec convert(Object value) throws DataException {
+        if (value instanceof Number) {
+            return toTimespec(((Number) value).longValue(), this.unit);
+        }
+
+        if (value instanceof Date) {
+            return toTimespec(((Date) value).getTime(), TimeUnit.MILLISECONDS);
+        }
+
+        if (value instanceof String) {
+            String s = (String) value;
+            if (!isNumber(s)) {
+                return this.parser.parse(s);
+            }
+
+            try {
+                return toTimespec(Long.parseLong(s), this.unit);
+            } catch (NumberFormatException e) {
+                throw new DataException("timestamp is out of range: " + s);
+            }
+        }
+
+        throw new DataException("timestamp is not a number, date or string: " + value);
+    }
+
+    private static Timespec toTimespec(long value, TimeUnit unit) {
+        long perSecond = unit.convert(1, TimeUnit.SECONDS);
+        if (perSecond == 0) {
+            // Units coarser than a second
+            return new Timespec(unit.toSeconds(value), 0);
+        }
+
+        long seconds = Math.floorDiv(value, perSecond);
+        long nanos = unit.toNanos(Math.floorMod(value, perSecond));
+
+        return new Timespec(seconds, nanos);
+    }
+
+    /**
+     * Returns true for an epoch timestamp rather than an ISO-8601 one, which
+     * always has a '-' after its year.
+     */
+    private static boolean isNumber(String s) {
+        int n = s.length();
+        if (n == 0 || n > 19) {
+            return false;
+        }
+
+        for (int i = (s.charAt(0) == '-' && n > 1 ? 1 : 0); i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
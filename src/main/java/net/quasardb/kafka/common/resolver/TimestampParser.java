@@ -0,0 +1,178 @@
+package net.quasardb.kafka.common.resolver;
+
+import net.quasardb.qdb.ts.Timespec;
+import org.apache.kafka.connect.errors.DataException;
+
+/**
+ * Parses ISO-8601 / RFC-3339 timestamps such as `2020-01-31T12:34:56.789+01:00`
+ * without going through java.time.
+ *
+ * Date and time are separated by `T`, `t` or a space, the fraction has up to
+ * nine significant digits, and the offset is either `Z` or numeric. Timestamps
+ * without an offset are taken to be UTC.
+ *
+ * Consecutive timestamps mostly fall within the same second, so the seconds
+ * of the last date and time parsed are cached. Safe to use from multiple
+ * threads.
+ */
+public class TimestampParser {
+
+    // Length of `yyyy-MM-ddTHH:mm:ss`
+    private static final int PREFIX_LENGTH = 19;
+
+    private static final class Prefix {
+        final String input;
+        final long seconds;
+
+        Prefix(String input, long seconds) {
+            this.input = input;
+            this.seconds = seconds;
+        }
+    }
+
+    // Immutable, so a stale read from another thread is merely a cache miss
+    private Prefix last;
+
+    public Timespec parse(String s) throws DataException {
+        int n = s.length();
+        if (n < PREFIX_LENGTH) {
+            throw invalid(s);
+        }
+
+        long seconds;
+        Prefix p = this.last;
+        if (p != null && s.regionMatches(0, p.input, 0, PREFIX_LENGTH)) {
+            seconds = p.seconds;
+        } else {
+            seconds = parsePrefix(s);
+            this.last = new Prefix(s, seconds);
+        }
+
+        int i = PREFIX_LENGTH;
+        long nanos = 0;
+
+        if (i < n && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+            int digits = 0;
+            for (++i; i < n && isDigit(s.charAt(i)); ++i, ++digits) {
+                if (digits < 9) {
+                    nanos = nanos * 10 + (s.charAt(i) - '0');
+                }
+            }
+
+            if (digits == 0) {
+                throw invalid(s);
+            }
+
+            for (; digits < 9; ++digits) {
+                nanos *= 10;
+            }
+        }
+
+        if (i < n) {
+            char c = s.charAt(i);
+            if (c == 'Z' || c == 'z') {
+                ++i;
+            } else if (c == '+' || c == '-') {
+                int hours = digits(s, i + 1, 23);
+                int minutes = 0;
+                i += 3;
+
+                if (i < n && s.charAt(i) == ':') {
+                    ++i;
+                }
+                if (i < n) {
+                    minutes = digits(s, i, 59);
+                    i += 2;
+                }
+
+                int offset = hours * 3600 + minutes * 60;
+                seconds -= (c == '+' ? offset : -offset);
+            } else {
+                throw invalid(s);
+            }
+        }
+
+        if (i != n) {
+            throw invalid(s);
+        }
+
+        return new Timespec(seconds, nanos);
+    }
+
+    /**
+     * Parses `yyyy-MM-ddTHH:mm:ss` into seconds since epoch.
+     */
+    private static long parsePrefix(String s) throws DataException {
+        char sep = s.charAt(10);
+        if (s.charAt(4) != '-' || s.charAt(7) != '-'
+            || (sep != 'T' && sep != 't' && sep != ' ')
+            || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            throw invalid(s);
+        }
+
+        int year = digits(s, 0, 99) * 100 + digits(s, 2, 99);
+        int month = digits(s, 5, 12);
+        int day = digits(s, 8, 31);
+        int hour = digits(s, 11, 23);
+        int minute = digits(s, 14, 59);
+        int second = digits(s, 17, 59);
+
+        if (month == 0 || day == 0 || day > daysInMonth(year, month)) {
+            throw invalid(s);
+        }
+
+        return epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = (month <= 2 ? year - 1 : year);
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            boolean leap = (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+            return leap ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /**
+     * Parses the two digits at `i`, which may not exceed `max`.
+     */
+    private static int digits(String s, int i, int max) throws DataException {
+        if (i + 1 >= s.length() || !isDigit(s.charAt(i)) || !isDigit(s.charAt(i + 1))) {
+            throw invalid(s);
+        }
+
+        int x = (s.charAt(i) - '0') * 10 + (s.charAt(i + 1) - '0');
+        if (x > max) {
+            throw invalid(s);
+        }
+
+        return x;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static DataException invalid(String s) {
+        return new DataException("timestamp is not a valid ISO-8601 date and time: " + s);
+    }
+}
@@ -15,4 +15,9 @@ public class TopicResolver extends Resolver<String> {
     public String resolve(SinkRecord record) throws DataException {
         return record.topic();
     }
+
+    @Override
+    public String resolveTopic(String topic) {
+        return topic;
+    }
 }
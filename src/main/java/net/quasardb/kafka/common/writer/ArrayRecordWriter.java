@@ -0,0 +1,154 @@
+package net.quasardb.kafka.common.writer;
+
+import net.quasardb.kafka.common.RecordConverter;
+import net.quasardb.kafka.common.TableBuffer;
+import net.quasardb.kafka.common.TableInfo;
+import net.quasardb.kafka.common.resolver.Resolver;
+import net.quasardb.kafka.common.resolver.TimespecConverter;
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Value;
+import net.quasardb.qdb.ts.Writer;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records that carry a batch of points as many rows, either as:
+ *
+ *  - parallel arrays: an array of timestamps, and for every column an array
+ *    of values of the same length. Columns which are not an array have the
+ *    same value in every row;
+ *  - an array of points: every element is a struct or map holding a
+ *    timestamp and the column values of a single row.
+ *
+ * Arrays can be Connect ARRAY fields of a Struct, or lists of a Map as
+ * produced by the JsonConverter.
+ */
+public class ArrayRecordWriter extends RecordWriter {
+
+    private final String timestampsField;
+    private final String pointsField;
+    private final String pointTimestampField;
+    private final TimespecConverter converter;
+
+    /**
+     * @param timestampsField Field holding the timestamps of parallel arrays,
+     *                        or null when records hold an array of points.
+     * @param pointsField Field holding the array of points, when
+     *                    timestampsField is null.
+     * @param pointTimestampField Field of a point holding its timestamp.
+     */
+    public ArrayRecordWriter(Resolver<Timespec> timespecResolver, TimespecConverter converter,
+                             String timestampsField, String pointsField, String pointTimestampField) {
+        super(timespecResolver);
+        this.converter = converter;
+        this.timestampsField = timestampsField;
+        this.pointsField = pointsField;
+        this.pointTimestampField = pointTimestampField;
+    }
+
+    public void write(Writer w, TableInfo t, SinkRecord s) throws RuntimeException {
+        Column[] columns = t.getTable().getColumns();
+        int offset = t.getOffset();
+
+        List<?> points = points(s);
+        for (int i = 0; i < points.size(); ++i) {
+            Value[] row = new Value[columns.length];
+            for (int j = 0; j < columns.length; ++j) {
+                row[j] = RecordConverter.convert(columns[j], value(s, points, i, columns[j].getName()));
+            }
+
+            try {
+                w.append(offset, timespec(points, i), row);
+            } catch (Exception e) {
+                log.error("Unable to write record: {}", e.getMessage());
+                log.error("Record: {}", s);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public int rowsOf(SinkRecord s) {
+        return points(s).size();
+    }
+
+    @Override
+    public boolean supportsBuffering() {
+        return true;
+    }
+
+    @Override
+    public void stage(TableBuffer b, TableInfo t, SinkRecord s) throws RuntimeException {
+        Column[] columns = t.getTable().getColumns();
+        List<?> points = points(s);
+        int first = b.size();
+
+        try {
+            for (int i = 0; i < points.size(); ++i) {
+                int row = b.addRow(TableBuffer.toNanos(timespec(points, i)), true);
+                for (int j = 0; j < columns.length; ++j) {
+                    RecordConverter.convertInto(columns[j], value(s, points, i, columns[j].getName()), b, j, row);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Either all points of a record are staged, or none
+            b.truncate(first);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the timestamps of parallel arrays, or the points.
+     */
+    private List<?> points(SinkRecord s) throws DataException {
+        String field = (this.timestampsField != null ? this.timestampsField : this.pointsField);
+        Object points = field(s.value(), field);
+
+        if (!(points instanceof List)) {
+            throw new DataException("field '" + field + "' is not an array, cannot explode record: " + s);
+        }
+
+        return (List<?>) points;
+    }
+
+    private Timespec timespec(List<?> points, int i) throws DataException {
+        Object point = points.get(i);
+        return this.converter.convert(this.timestampsField != null ? point : field(point, this.pointTimestampField));
+    }
+
+    private Object value(SinkRecord s, List<?> points, int i, String column) throws DataException {
+        if (this.timestampsField == null) {
+            return field(points.get(i), column);
+        }
+
+        Object value = field(s.value(), column);
+        if (!(value instanceof List)) {
+            return value;
+        }
+
+        List<?> values = (List<?>) value;
+        if (values.size() != points.size()) {
+            throw new DataException("array '" + column + "' has " + values.size() + " values for " + points.size() + " timestamps");
+        }
+
+        return values.get(i);
+    }
+
+    private static Object field(Object data, String name) throws DataException {
+        if (data instanceof Struct) {
+            Struct struct = (Struct) data;
+            return struct.schema().field(name) == null ? null : struct.get(name);
+        }
+
+        if (data instanceof Map) {
+            return ((Map) data).get(name);
+        }
+
+        throw new DataException("point is not Avro schema nor structured json, cannot look up field: " + name);
+    }
+}
@@ -1,31 +1,53 @@
 package net.quasardb.kafka.common.writer;
 
+import net.quasardb.kafka.common.ColumnIndex;
 import net.quasardb.kafka.common.RecordConverter;
+import net.quasardb.kafka.common.TableBuffer;
 import net.quasardb.kafka.common.TableInfo;
 import net.quasardb.kafka.common.resolver.Resolver;
 import net.quasardb.qdb.ts.Column;
 import net.quasardb.qdb.ts.Timespec;
 import net.quasardb.qdb.ts.Value;
 import net.quasardb.qdb.ts.Writer;
+import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.sink.SinkRecord;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
 public class ColumnRecordWriter extends RecordWriter {
 
     private final Resolver<String> columnResolver;
     private final Resolver<String> valueResolver;
 
+    /**
+     * Number of most recent rows searched for a row with the same timestamp to
+     * merge a value into, or 0 to write every value as a row of its own.
+     */
+    private final int coalesceWindow;
+
     public ColumnRecordWriter(Resolver<Timespec> timespecResolver, Resolver<String> columnResolver, Resolver<String> valueResolver ) {
+        this(timespecResolver, columnResolver, valueResolver, 0);
+    }
+
+    public ColumnRecordWriter(Resolver<Timespec> timespecResolver, Resolver<String> columnResolver, Resolver<String> valueResolver, int coalesceWindow) {
         super(timespecResolver);
         this.columnResolver = columnResolver;
         this.valueResolver = valueResolver;
+        this.coalesceWindow = coalesceWindow;
     }
 
     public void write(Writer w, TableInfo t, SinkRecord s) throws RuntimeException {
-        String columnName = this.columnResolver.resolve(s);
-        String valueName = this.valueResolver.resolve(s);
+        write(w, t, s, this.columnResolver.resolve(s), this.valueResolver.resolve(s), null);
+    }
 
-        int columnIndex = t.getTable().columnIndexById(columnName);
-        Column c = t.getTable().getColumns()[columnIndex];
+    /**
+     * @param ts Timespec of the record, or null to resolve it.
+     */
+    private void write(Writer w, TableInfo t, SinkRecord s, String columnName, String valueName, Timespec ts) throws RuntimeException {
+        int columnIndex = columnIndex(t, columnName);
+        Column c = t.getColumnIndex().columnAt(columnIndex);
 
         Value val = RecordConverter.convert(c, valueName, s);
 
@@ -36,7 +58,9 @@ public class ColumnRecordWriter extends RecordWriter {
         int offset = t.getOffset() + columnIndex;
 
         try {
-            Timespec ts = timespecResolver.resolve(s);
+            if (ts == null) {
+                ts = timespecResolver.resolve(s);
+            }
 
             log.debug("has timespec: {}", ts);
 
@@ -48,4 +72,165 @@ public class ColumnRecordWriter extends RecordWriter {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Resolves the columns, values and timestamps of the whole block at once.
+     * When coalescing, merges the values sharing the same timestamp into wide
+     * rows, in which the columns without a value are null. Like for buffered
+     * values, a value is merged into a row with the same timestamp among the
+     * last `coalesceWindow` rows of the block in which its column is not set
+     * yet, otherwise it starts a new row.
+     */
+    @Override
+    public void write(Writer w, TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        String[] columnNames = new String[records.size()];
+        String[] valueNames = new String[records.size()];
+        Timespec[] timespecs = new Timespec[records.size()];
+        this.columnResolver.resolveAll(records, columnNames);
+        this.valueResolver.resolveAll(records, valueNames);
+        timespecResolver.resolveAll(records, timespecs);
+
+        if (this.coalesceWindow == 0) {
+            for (int i = 0; i < records.size(); ++i) {
+                write(w, t, records.get(i), columnNames[i], valueNames[i], timespecs[i]);
+            }
+            return;
+        }
+
+        ColumnIndex columns = t.getColumnIndex();
+
+        // Rows that may still take values, oldest first
+        ArrayDeque<PendingRow> pending = new ArrayDeque<>();
+
+        for (int i = 0; i < records.size(); ++i) {
+            SinkRecord s = records.get(i);
+            int columnIndex = columnIndex(t, columnNames[i]);
+            Value value = RecordConverter.convert(columns.columnAt(columnIndex), valueNames[i], s);
+
+            PendingRow row = findRow(pending, timespecs[i], columnIndex);
+            if (row == null) {
+                if (pending.size() == this.coalesceWindow) {
+                    append(w, t.getOffset(), pending.removeFirst());
+                }
+
+                row = new PendingRow(timespecs[i], columns.size());
+                pending.addLast(row);
+            }
+
+            row.values[columnIndex] = value;
+            row.record = s;
+        }
+
+        while (!pending.isEmpty()) {
+            append(w, t.getOffset(), pending.removeFirst());
+        }
+    }
+
+    /**
+     * A row of a block that was not appended yet, together with the last record
+     * merged into it.
+     */
+    private static class PendingRow {
+        final Timespec ts;
+        final Value[] values;
+        SinkRecord record;
+
+        PendingRow(Timespec ts, int columns) {
+            this.ts = ts;
+            this.values = new Value[columns];
+        }
+    }
+
+    private static PendingRow findRow(ArrayDeque<PendingRow> pending, Timespec ts, int columnIndex) {
+        Iterator<PendingRow> it = pending.descendingIterator();
+        while (it.hasNext()) {
+            PendingRow row = it.next();
+            if (row.values[columnIndex] == null && row.ts.equals(ts)) {
+                return row;
+            }
+        }
+
+        return null;
+    }
+
+    private static int columnIndex(TableInfo t, String columnName) throws DataException {
+        int columnIndex = t.getColumnIndex().indexOf(columnName);
+        if (columnIndex == -1) {
+            throw new DataException("Column '" + columnName + "' not found in table " + t.getTable().getName());
+        }
+
+        return columnIndex;
+    }
+
+    private void append(Writer w, int offset, PendingRow row) throws RuntimeException {
+        Value[] values = row.values;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] == null) {
+                values[i] = Value.createNull();
+            }
+        }
+
+        try {
+            w.append(offset, row.ts, values);
+        } catch (Exception e) {
+            log.error("Unable to write record: {}", e.getMessage());
+            log.error("Record: {}", row.record);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean supportsBuffering() {
+        return true;
+    }
+
+    @Override
+    public void stage(TableBuffer b, TableInfo t, SinkRecord s) throws RuntimeException {
+        stage(b, t, s, this.columnResolver.resolve(s), this.valueResolver.resolve(s), timespecResolver.resolve(s));
+    }
+
+    @Override
+    public void stage(TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        TableBuffer b = t.getBuffer();
+
+        String[] columnNames = new String[records.size()];
+        String[] valueNames = new String[records.size()];
+        Timespec[] timespecs = new Timespec[records.size()];
+        this.columnResolver.resolveAll(records, columnNames);
+        this.valueResolver.resolveAll(records, valueNames);
+        timespecResolver.resolveAll(records, timespecs);
+
+        for (int i = 0; i < records.size(); ++i) {
+            stage(b, t, records.get(i), columnNames[i], valueNames[i], timespecs[i]);
+        }
+    }
+
+    private void stage(TableBuffer b, TableInfo t, SinkRecord s, String columnName, String valueName, Timespec timespec) throws RuntimeException {
+        int columnIndex = columnIndex(t, columnName);
+        Column c = t.getColumnIndex().columnAt(columnIndex);
+
+        long ts = TableBuffer.toNanos(timespec);
+
+        if (this.coalesceWindow > 0) {
+            int row = b.findRow(ts, columnIndex, this.coalesceWindow);
+            if (row != -1) {
+                try {
+                    RecordConverter.convert(c, valueName, s, b, columnIndex, row);
+                } catch (RuntimeException e) {
+                    b.clearCell(columnIndex, row);
+                    throw e;
+                }
+                b.coalesce(row);
+                return;
+            }
+        }
+
+        int row = b.addRow(ts, false);
+        try {
+            RecordConverter.convert(c, valueName, s, b, columnIndex, row);
+        } catch (RuntimeException e) {
+            b.truncate(row);
+            throw e;
+        }
+    }
 }
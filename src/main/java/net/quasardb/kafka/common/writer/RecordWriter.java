@@ -1,5 +1,6 @@
 package net.quasardb.kafka.common.writer;
 
+import net.quasardb.kafka.common.TableBuffer;
 import net.quasardb.kafka.common.TableInfo;
 import net.quasardb.kafka.common.resolver.Resolver;
 import net.quasardb.qdb.ts.Timespec;
@@ -8,6 +9,8 @@ import org.apache.kafka.connect.sink.SinkRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 abstract public class RecordWriter {
 
     protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -20,4 +23,57 @@ abstract public class RecordWriter {
 
     abstract public void write(Writer w, TableInfo t, SinkRecord s) throws RuntimeException;
 
+    /**
+     * Writes a block of records which all belong to the same table. The default
+     * implementation writes them one by one, implementations can override this
+     * when they are able to handle a block more efficiently.
+     */
+    public void write(Writer w, TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        for (SinkRecord s : records) {
+            write(w, t, s);
+        }
+    }
+
+    /**
+     * Number of rows a record is written as, which the task accounts against
+     * its flush thresholds when records are appended to a Writer directly.
+     */
+    public int rowsOf(SinkRecord s) {
+        return 1;
+    }
+
+    /**
+     * Returns true when this writer can stage records into the TableBuffer of a
+     * table rather than appending them to a Writer directly.
+     */
+    public boolean supportsBuffering() {
+        return false;
+    }
+
+    /**
+     * Stages a record into a TableBuffer laid out like table `t`. Only called
+     * when {@link #supportsBuffering()} returns true, and must be safe to call
+     * from multiple threads for different buffers.
+     */
+    public void stage(TableBuffer b, TableInfo t, SinkRecord s) throws RuntimeException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support buffering");
+    }
+
+    /**
+     * Stages a record into the TableBuffer of a table.
+     */
+    public void stage(TableInfo t, SinkRecord s) throws RuntimeException {
+        stage(t.getBuffer(), t, s);
+    }
+
+    /**
+     * Stages a block of records which all belong to the same table.
+     */
+    public void stage(TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        TableBuffer b = t.getBuffer();
+        for (SinkRecord s : records) {
+            stage(b, t, s);
+        }
+    }
+
 }
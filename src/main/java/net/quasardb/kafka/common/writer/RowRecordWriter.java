@@ -1,6 +1,7 @@
 package net.quasardb.kafka.common.writer;
 
 import net.quasardb.kafka.common.RecordConverter;
+import net.quasardb.kafka.common.TableBuffer;
 import net.quasardb.kafka.common.TableInfo;
 import net.quasardb.kafka.common.resolver.Resolver;
 import net.quasardb.qdb.ts.Timespec;
@@ -8,6 +9,8 @@ import net.quasardb.qdb.ts.Value;
 import net.quasardb.qdb.ts.Writer;
 import org.apache.kafka.connect.sink.SinkRecord;
 
+import java.util.List;
+
 public class RowRecordWriter extends RecordWriter {
 
     public RowRecordWriter(Resolver<Timespec> timespecResolver) {
@@ -15,12 +18,60 @@ public class RowRecordWriter extends RecordWriter {
     }
 
     public void write(Writer w, TableInfo t, SinkRecord s) throws RuntimeException {
-        Value[] row = RecordConverter.convert(t.getTable().getColumns(), s);
+        Value[] row = RecordConverter.convert(t, s);
+
+        append(w, t.getOffset(), s, timespecResolver.resolve(s), row);
+    }
+
+    @Override
+    public void write(Writer w, TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        // All records share the same table, so the offset is only looked up once
+        int offset = t.getOffset();
+
+        Timespec[] ts = new Timespec[records.size()];
+        timespecResolver.resolveAll(records, ts);
+
+        for (int i = 0; i < ts.length; ++i) {
+            SinkRecord s = records.get(i);
+            append(w, offset, s, ts[i], RecordConverter.convert(t, s));
+        }
+    }
+
+    @Override
+    public boolean supportsBuffering() {
+        return true;
+    }
 
+    @Override
+    public void stage(TableBuffer b, TableInfo t, SinkRecord s) throws RuntimeException {
+        stage(b, t, s, timespecResolver.resolve(s));
+    }
+
+    @Override
+    public void stage(TableInfo t, List<SinkRecord> records) throws RuntimeException {
+        TableBuffer b = t.getBuffer();
+
+        Timespec[] ts = new Timespec[records.size()];
+        timespecResolver.resolveAll(records, ts);
+
+        for (int i = 0; i < ts.length; ++i) {
+            stage(b, t, records.get(i), ts[i]);
+        }
+    }
+
+    private void stage(TableBuffer b, TableInfo t, SinkRecord s, Timespec ts) throws RuntimeException {
+        int row = b.addRow(TableBuffer.toNanos(ts), true);
         try {
-            Timespec ts = timespecResolver.resolve(s);
+            RecordConverter.convert(t, s, b, row);
+        } catch (RuntimeException e) {
+            b.truncate(row);
+            throw e;
+        }
+    }
 
-            w.append(t.getOffset(), ts, row);
+    private void append(Writer w, int offset, SinkRecord s, Timespec ts, Value[] row) throws RuntimeException {
+        try {
+            w.append(offset, ts, row);
         } catch (Exception e) {
             log.error("Unable to write record: {}", e.getMessage());
             log.error("Record: {}", s);
@@ -59,6 +59,7 @@ public class QdbSinkConnector extends SinkConnector {
         List<Map<String, String>> configs = new ArrayList<>(maxTasks);
         for (int i = 0; i < maxTasks; i++) {
             Map<String, String> config = new HashMap<>(props);
+            config.put(QdbSinkConfig.TASK_ID, Integer.toString(i));
             configs.add(config);
         }
         return configs;
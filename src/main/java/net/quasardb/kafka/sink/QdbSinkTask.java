@@ -1,14 +1,23 @@
 package net.quasardb.kafka.sink;
 
 import net.quasardb.kafka.common.ConnectorUtils;
+import net.quasardb.kafka.common.JsonFields;
+import net.quasardb.kafka.common.ReplayFilter;
+import net.quasardb.kafka.common.SchemaLayoutCache;
+import net.quasardb.kafka.common.SkeletonCache;
+import net.quasardb.kafka.common.TableBuffer;
 import net.quasardb.kafka.common.TableInfo;
 import net.quasardb.kafka.common.TableRegistry;
+import net.quasardb.kafka.common.TableWriter;
 import net.quasardb.kafka.common.config.QdbSinkConfig;
+import net.quasardb.kafka.common.metrics.TaskMetrics;
+import net.quasardb.kafka.common.metrics.TaskMetrics.FlushTrigger;
 import net.quasardb.kafka.common.resolver.Resolver;
 import net.quasardb.kafka.common.writer.RecordWriter;
 import net.quasardb.qdb.Session;
+import net.quasardb.qdb.exception.AliasAlreadyExistsException;
+import net.quasardb.qdb.ts.Column;
 import net.quasardb.qdb.ts.Table;
-import net.quasardb.qdb.ts.Writer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.DataException;
@@ -17,16 +26,37 @@ import org.apache.kafka.connect.sink.SinkTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 
 public class QdbSinkTask extends SinkTask {
 
     private static final Logger log = LoggerFactory.getLogger(QdbSinkTask.class);
 
     private Session session;
-    private Writer writer;
+    private TableWriter[] writers;
+    private Pattern[] writerGroups;
 
     private TableRegistry tableRegistry;
     private RecordWriter recordWriter;
@@ -34,8 +64,112 @@ public class QdbSinkTask extends SinkTask {
     private Resolver<String> skeletonTableResolver;
     private Resolver<List<String>> tableTagsResolver;
     private Resolver<Long> tableShardSizeResolver;
+    private SkeletonCache skeletonCache;
+    private SchemaLayoutCache schemaLayouts;
+
+    /**
+     * Whether tables need to know their shard size, and the size assumed for
+     * tables for which the configuration does not tell.
+     */
+    private boolean shardAware;
+    private long defaultShardSize;
 
     private QdbSinkConfig config;
+    private boolean batched;
+    private boolean rawJson;
+    private boolean buffered;
+    private int bufferMaxRows;
+
+    /**
+     * Tables that have rows staged in their buffer which have not yet been
+     * pushed to the writer.
+     */
+    private final Set<TableInfo> pendingTables = new LinkedHashSet<>();
+
+    private boolean asyncFlush;
+    private ExecutorService flushExecutor;
+    private Future<?> pendingFlush;
+
+    /**
+     * Next offset to consume per partition, for all records that were put.
+     */
+    private final Map<TopicPartition, Long> consumedOffsets = new HashMap<>();
+
+    /**
+     * Next offset to consume per partition, for all records that were flushed.
+     */
+    private final Map<TopicPartition, Long> flushedOffsets = new ConcurrentHashMap<>();
+
+    private long flushMaxRows;
+    private long flushMaxBytes;
+    private long flushLingerMs;
+
+    /**
+     * Rows and estimated bytes written since the last flush, and the time the
+     * first of those rows was written.
+     */
+    private long unflushedRows;
+    private long unflushedBytes;
+    private long firstUnflushedAt;
+
+    private TaskMetrics metrics;
+
+    /**
+     * Looks up the tables of newly assigned partitions, null when pre-warming
+     * is disabled.
+     */
+    private ExecutorService prewarmExecutor;
+
+    /**
+     * Tables being looked up or created in the background, together with the
+     * records that arrived for them in the meantime.
+     */
+    private static class PendingTable {
+        final Future<Table> table;
+        final List<SinkRecord> records = new ArrayList<>();
+
+        /**
+         * Lowest offset of the parked records, per partition.
+         */
+        final Map<TopicPartition, Long> lowestOffsets = new HashMap<>();
+
+        PendingTable(Future<Table> table) {
+            this.table = table;
+        }
+
+        void add(SinkRecord record) {
+            this.records.add(record);
+            if (record.kafkaPartition() != null) {
+                this.lowestOffsets.merge(new TopicPartition(record.topic(), record.kafkaPartition()),
+                                         record.kafkaOffset(), Math::min);
+            }
+        }
+    }
+
+    private ExecutorService createExecutor;
+    private int maxParkedRecords;
+    private final Map<String, PendingTable> creatingTables = new LinkedHashMap<>();
+
+    private ForkJoinPool conversionPool;
+    private int conversionChunkSize;
+
+    private int dedupCapacity;
+    private double dedupFalsePositiveRate;
+
+    /**
+     * Rows written per partition since its offsets were last committed.
+     */
+    private final Map<TopicPartition, ReplayFilter> replayFilters = new HashMap<>();
+
+    private long memoryBudget;
+    private long memoryLowWater;
+    private boolean paused;
+
+    /**
+     * Estimated bytes of the rows handed to the flush thread that have not been
+     * flushed yet.
+     */
+    private volatile long flushingBytes;
 
     /**
      * Always use no-arg constructor, #start will initialize the task.
@@ -50,32 +184,226 @@ public class QdbSinkTask extends SinkTask {
 
     @Override
     public void start(Map<String, String> props) {
-        if (this.writer != null) {
+        if (this.writers != null) {
             throw new RuntimeException("can only start a task once");
         }
 
-        this.tableRegistry = new TableRegistry();
-
         config = new QdbSinkConfig(props, log.isDebugEnabled());
 
+        this.tableRegistry = new TableRegistry(config.getInt(QdbSinkConfig.TABLE_REGISTRY_MAX_ENTRIES),
+                                               config.getLong(QdbSinkConfig.TABLE_REGISTRY_IDLE_TTL_MS),
+                                               config.getLong(QdbSinkConfig.TABLE_MISSING_TTL_MS));
+
         this.session = ConnectorUtils.connect(config);
         this.tableResolver = ConnectorUtils.createTableResolver(config);
         this.skeletonTableResolver = ConnectorUtils.createSkeletonTableResolver(config);
         this.tableTagsResolver = ConnectorUtils.createTableTagsResolver(config);
         this.tableShardSizeResolver = ConnectorUtils.createShardSizeResolver(config);
+        this.skeletonCache = new SkeletonCache(config.getLong(QdbSinkConfig.TABLE_AUTOCREATE_SKELETON_REFRESH_MS_CONFIG));
+        if (config.getBoolean(QdbSinkConfig.TABLE_AUTOCREATE_FROM_SCHEMA_CONFIG)) {
+            this.schemaLayouts = new SchemaLayoutCache();
+        }
         this.recordWriter = ConnectorUtils.createRecordWriter(config);
+        this.batched = config.getBoolean(QdbSinkConfig.PUT_MODE_BATCHED);
+        this.rawJson = config.getBoolean(QdbSinkConfig.VALUE_RAW_JSON_CONFIG);
+        this.bufferMaxRows = config.getInt(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS);
+        this.buffered = this.bufferMaxRows > 0 && this.recordWriter.supportsBuffering();
+
+        if (this.bufferMaxRows > 0 && !this.buffered) {
+            log.warn("{} does not support buffering, ignoring {}",
+                     this.recordWriter.getClass().getName(), QdbSinkConfig.BUFFER_TABLE_MAX_ROWS);
+        }
+
+        if (config.getInt(QdbSinkConfig.COLUMN_COALESCE_WINDOW_CONFIG) > 0 && !this.buffered && !this.batched) {
+            log.warn("{} requires {} or {}, writing every value as a row of its own",
+                     QdbSinkConfig.COLUMN_COALESCE_WINDOW_CONFIG, QdbSinkConfig.BUFFER_TABLE_MAX_ROWS,
+                     QdbSinkConfig.PUT_MODE_BATCHED);
+        }
+
+        this.asyncFlush = config.getBoolean(QdbSinkConfig.FLUSH_MODE_ASYNC);
+        if (this.asyncFlush && !this.buffered) {
+            log.warn("{} requires buffering, flushing synchronously", QdbSinkConfig.FLUSH_MODE_ASYNC);
+            this.asyncFlush = false;
+        }
+
+        boolean autoFlush = config.getBoolean(QdbSinkConfig.WRITER_MODE_AUTOFLUSH);
+        boolean asyncWriter = config.getBoolean(QdbSinkConfig.WRITER_MODE_ASYNC);
+        boolean flushPerShard = config.getBoolean(QdbSinkConfig.FLUSH_PER_SHARD);
+
+        TableBuffer.Order order = TableBuffer.Order.ARRIVAL;
+        if (config.getBoolean(QdbSinkConfig.BUFFER_SORT_BY_TIMESTAMP)) {
+            order = TableBuffer.Order.TIMESTAMP;
+        } else if (config.getBoolean(QdbSinkConfig.BUFFER_GROUP_BY_SHARD)) {
+            order = TableBuffer.Order.SHARD;
+        }
+
+        if (order != TableBuffer.Order.ARRIVAL && !this.buffered) {
+            log.warn("Ordering rows requires buffering, writing rows in arrival order");
+        }
+
+        if (flushPerShard && order == TableBuffer.Order.ARRIVAL) {
+            log.warn("{} requires rows to be grouped per shard, ignoring", QdbSinkConfig.FLUSH_PER_SHARD);
+            flushPerShard = false;
+        }
+
+        this.shardAware = order != TableBuffer.Order.ARRIVAL;
+        this.defaultShardSize = config.getLong(QdbSinkConfig.TABLE_AUTOCREATE_SHARD_SIZE_CONFIG);
+
+        this.metrics = new TaskMetrics();
+
+        this.writers = new TableWriter[config.getInt(QdbSinkConfig.WRITER_COUNT)];
+        for (int i = 0; i < this.writers.length; ++i) {
+            this.writers[i] = new TableWriter(this.session, i, asyncWriter, autoFlush, order, flushPerShard, this.metrics);
+        }
+
+        List<String> groups = config.getList(QdbSinkConfig.WRITER_GROUPS);
+        this.writerGroups = groups == null
+            ? new Pattern[0]
+            : groups.stream().map(Pattern::compile).toArray(Pattern[]::new);
+
+        if (this.asyncFlush || this.writers.length > 1) {
+            this.flushExecutor = Executors.newFixedThreadPool(this.writers.length, daemonThreads("qdb-sink-flush"));
+        }
+
+        int prewarmThreads = config.getInt(QdbSinkConfig.TABLE_PREWARM_THREADS);
+        if (prewarmThreads > 0) {
+            this.prewarmExecutor = Executors.newFixedThreadPool(prewarmThreads, daemonThreads("qdb-sink-prewarm"));
+        }
+
+        int createThreads = config.getInt(QdbSinkConfig.TABLE_CREATE_THREADS);
+        if (createThreads > 0) {
+            this.createExecutor = Executors.newFixedThreadPool(createThreads, daemonThreads("qdb-sink-create"));
+            this.maxParkedRecords = config.getInt(QdbSinkConfig.TABLE_CREATE_MAX_PARKED_RECORDS);
+        }
+
+        int parallelism = config.getInt(QdbSinkConfig.CONVERSION_PARALLELISM);
+        if (parallelism > 1 && !this.buffered) {
+            log.warn("{} requires buffering, converting on the task thread", QdbSinkConfig.CONVERSION_PARALLELISM);
+        } else if (parallelism > 1) {
+            this.conversionPool = new ForkJoinPool(parallelism);
+            this.conversionChunkSize = config.getInt(QdbSinkConfig.CONVERSION_CHUNK_SIZE);
+        }
+
+        this.dedupCapacity = config.getInt(QdbSinkConfig.DEDUP_WINDOW_RECORDS);
+        this.dedupFalsePositiveRate = config.getDouble(QdbSinkConfig.DEDUP_FALSE_POSITIVE_RATE);
+
+        this.flushMaxRows = config.getLong(QdbSinkConfig.FLUSH_MAX_BUFFERED_ROWS);
+        this.flushMaxBytes = config.getLong(QdbSinkConfig.FLUSH_MAX_BUFFERED_BYTES);
+        this.flushLingerMs = config.getLong(QdbSinkConfig.FLUSH_LINGER_MS);
+
+        this.memoryBudget = config.getLong(QdbSinkConfig.MEMORY_BUDGET_BYTES);
+        this.memoryLowWater = (long) (this.memoryBudget * config.getDouble(QdbSinkConfig.MEMORY_RESUME_RATIO));
+
+        this.metrics.register(props.getOrDefault(QdbSinkConfig.CONNECTOR_NAME, "qdb-sink"),
+                              Integer.parseInt(props.getOrDefault(QdbSinkConfig.TASK_ID, "0")));
 
         log.info("Started QdbSinkTask");
     }
 
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * When the table resolver only depends on the topic, looks up the tables of
+     * all newly assigned partitions in parallel and registers them with the
+     * writer, so that the first put does not have to. Tables that do not exist
+     * yet are left to be created when their first record arrives.
+     */
+    @Override
+    public void open(Collection<TopicPartition> partitions) {
+        if (this.prewarmExecutor == null) {
+            return;
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        for (TopicPartition tp : partitions) {
+            String name = this.tableResolver.resolveTopic(tp.topic());
+            if (name != null && this.tableRegistry.get(name) == null && !this.creatingTables.containsKey(name)) {
+                names.add(name);
+            }
+        }
+
+        if (names.isEmpty()) {
+            return;
+        }
+
+        log.info("Pre-warming {} tables for {} assigned partitions", names.size(), partitions.size());
+
+        Map<String, Future<Table>> lookups = new LinkedHashMap<>();
+        for (String name : names) {
+            lookups.put(name, this.prewarmExecutor.submit(() -> TableRegistry.lookup(this.session, name)));
+        }
+
+        for (Map.Entry<String, Future<Table>> lookup : lookups.entrySet()) {
+            Table table;
+            try {
+                table = lookup.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while pre-warming tables");
+                lookups.values().forEach(f -> f.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                // Not fatal, the table will be looked up once its first record arrives
+                log.warn("Unable to pre-warm table {}: {}", lookup.getKey(), e.getCause().getMessage());
+                continue;
+            }
+
+            if (table == null) {
+                log.debug("Table {} not found, it will be created once its first record arrives", lookup.getKey());
+                this.tableRegistry.markMissing(lookup.getKey());
+                continue;
+            }
+
+            TableInfo t = this.tableRegistry.put(lookup.getKey(), table);
+            assignShardSize(t, null);
+            writerFor(table.getName()).register(t);
+        }
+
+        retireEvicted();
+    }
+
     @Override
     public void stop() {
         log.info("Stopping QdbSinkTask");
 
         try {
-            if (this.writer != null) {
-                this.writer.close();
-                this.writer = null;
+            if (this.flushExecutor != null) {
+                try {
+                    awaitPendingFlush();
+                } catch (RuntimeException e) {
+                    log.warn("Pending flush failed while stopping: {}", e.getMessage());
+                } finally {
+                    this.flushExecutor.shutdown();
+                    this.flushExecutor = null;
+                }
+            }
+
+            if (this.conversionPool != null) {
+                this.conversionPool.shutdown();
+                this.conversionPool = null;
+            }
+
+            if (this.createExecutor != null) {
+                this.createExecutor.shutdownNow();
+                this.createExecutor = null;
+            }
+
+            if (this.prewarmExecutor != null) {
+                this.prewarmExecutor.shutdownNow();
+                this.prewarmExecutor = null;
+            }
+
+            if (this.writers != null) {
+                for (TableWriter w : this.writers) {
+                    w.close();
+                }
+                this.writers = null;
             }
 
             if (this.session != null) {
@@ -85,6 +413,20 @@ public class QdbSinkTask extends SinkTask {
 
             this.tableRegistry = null;
             this.tableResolver = null;
+            this.pendingTables.clear();
+            this.creatingTables.clear();
+            this.replayFilters.clear();
+            this.consumedOffsets.clear();
+            this.flushedOffsets.clear();
+            this.unflushedRows = 0;
+            this.unflushedBytes = 0;
+            this.flushingBytes = 0;
+            this.paused = false;
+
+            if (this.metrics != null) {
+                this.metrics.unregister();
+                this.metrics = null;
+            }
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -92,18 +434,32 @@ public class QdbSinkTask extends SinkTask {
     }
 
     private Table createTable(String tableName, SinkRecord record) throws DataException {
-        // Table not found
-        if (this.skeletonTableResolver == null) {
+        Column[] columns;
+
+        if (this.schemaLayouts != null) {
+            columns = this.schemaLayouts.get(record.valueSchema());
+            log.info("creating target table '{}' with {} columns derived from record schema", tableName, columns.length);
+        } else if (this.skeletonTableResolver != null) {
+            Table skeleton = this.skeletonCache.get(this.session, this.skeletonTableResolver.resolve(record));
+            log.info("creating copy of skeleton table '{}' into target table '{}'", skeleton.getName(), tableName);
+            columns = skeleton.getColumns();
+        } else {
+            // Table not found
             throw new DataException("Table '" + tableName + "' not found, and no skeleton table configuration for creation, aborting");
         }
 
-        Table skeleton = new Table(this.session, this.skeletonTableResolver.resolve(record));
-        log.info("creating copy of skeleton table '{}' into target table '{}'", skeleton.getName(), tableName);
-
         Long shardsize = this.tableShardSizeResolver.resolve(record);
         log.debug("using shard size {} for table {}", shardsize, tableName);
 
-        Table table = Table.create(this.session, tableName, skeleton, shardsize);
+        Table table;
+        try {
+            table = Table.create(this.session, tableName, columns, shardsize);
+        } catch (AliasAlreadyExistsException e) {
+            // Another task created the table after we found it missing, which
+            // also takes care of its tags.
+            log.info("table '{}' was created concurrently, using existing table", tableName);
+            return new Table(this.session, tableName);
+        }
 
         if (this.tableTagsResolver != null) {
             List<String> tags = this.tableTagsResolver.resolve(record);
@@ -126,58 +482,916 @@ public class QdbSinkTask extends SinkTask {
             t = this.tableRegistry.put(this.createTable(tableName, record));
         }
 
-        if (this.writer == null) {
-            boolean auto = config.getBoolean(QdbSinkConfig.WRITER_MODE_AUTOFLUSH);
-            boolean async = config.getBoolean(QdbSinkConfig.WRITER_MODE_ASYNC);
+        assignShardSize(t, record);
+        writerFor(tableName).register(t);
 
-            log.debug("Initializing Writer (Async:{} & AutoFlush:{})", async, auto);
-            if (auto) {
-                if (async)
-                    this.writer = Table.asyncAutoFlushWriter(this.session, t.getTable());
-                else
-                    this.writer = Table.autoFlushWriter(this.session, t.getTable());
+        return t;
+    }
 
-            } else if (async)
-                this.writer = Table.asyncWriter(this.session, t.getTable());
-            else
-                this.writer = Table.writer(this.session, t.getTable());
-        } else {
-            log.debug("Writer already initialized, adding extra table");
-            this.writer.extraTables(t.getTable());
+    /**
+     * Records the shard size of a table when rows are grouped per shard. The
+     * shard size of an existing table cannot be read back, so this resolves the
+     * size autocreation would use, which is exact for tables created by the
+     * connector.
+     */
+    private void assignShardSize(TableInfo t, SinkRecord record) {
+        if (!this.shardAware) {
+            return;
+        }
+
+        Long shardSize = null;
+        if (record != null) {
+            try {
+                shardSize = this.tableShardSizeResolver.resolve(record);
+            } catch (DataException e) {
+                log.debug("Unable to resolve shard size of table {}: {}", t.getTable().getName(), e.getMessage());
+            }
+        }
+
+        t.setShardSize(shardSize != null ? shardSize : this.defaultShardSize);
+    }
+
+    /**
+     * Picks the writer of a table, either through the configured writer groups
+     * or by hash of the table name.
+     */
+    private TableWriter writerFor(String tableName) {
+        for (int i = 0; i < this.writerGroups.length; ++i) {
+            if (this.writerGroups[i].matcher(tableName).matches()) {
+                return this.writers[i % this.writers.length];
+            }
+        }
+
+        return this.writers[Math.floorMod(tableName.hashCode(), this.writers.length)];
+    }
+
+    /**
+     * Looks up a table in the registry, adding it when it is not known yet, and
+     * makes sure its offset inside the writer is known. When tables are created
+     * in the background, returns null for tables that are not known yet after
+     * parking the record.
+     */
+    private TableInfo resolveTable(String tableName, SinkRecord record) throws DataException {
+        TableInfo t = this.tableRegistry.get(tableName);
+
+        if (t == null && this.createExecutor != null) {
+            return park(tableName, record);
+        }
+
+        if (t == null) {
+            t = addTableToRegistry(tableName, record);
+        }
+
+        if (t.hasOffset() == false) {
+            writerFor(t.getTable().getName()).register(t);
         }
 
         return t;
     }
 
+    /**
+     * Parks a record of a table that is not known yet, and starts looking up or
+     * creating the table in the background when that is not in progress.
+     */
+    private TableInfo park(String tableName, SinkRecord record) throws DataException {
+        if (tableName == null) {
+            throw new DataException("Invalid table name provided: " + tableName);
+        }
+
+        PendingTable p = this.creatingTables.get(tableName);
+        if (p == null) {
+            log.info("Resolving table {} in the background", tableName);
+            p = new PendingTable(this.createExecutor.submit(() -> lookupOrCreateTable(tableName, record)));
+            this.creatingTables.put(tableName, p);
+        }
+
+        p.add(record);
+        return null;
+    }
+
+    /**
+     * Runs on the create threads.
+     */
+    private Table lookupOrCreateTable(String tableName, SinkRecord record) throws DataException {
+        if (!this.tableRegistry.isMissing(tableName)) {
+            Table table = TableRegistry.lookup(this.session, tableName);
+            if (table != null) {
+                return table;
+            }
+            this.tableRegistry.markMissing(tableName);
+        }
+
+        return createTable(tableName, record);
+    }
+
+    /**
+     * Adds the tables that are ready to the registry and writes the records
+     * parked for them, in the order they arrived. Only called before or after
+     * the records of a put are written, never in between, so that offsets are
+     * not tracked past records of the put that were not written yet.
+     *
+     * @param wait Whether to wait for all tables instead of only taking the
+     *             ones that are ready.
+     */
+    private void releaseCreatedTables(boolean wait) {
+        Iterator<Map.Entry<String, PendingTable>> it = this.creatingTables.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, PendingTable> e = it.next();
+            if (wait || e.getValue().table.isDone()) {
+                it.remove();
+                release(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Waits for the tables that have too many records parked to be ready, and
+     * writes those records.
+     */
+    private void releaseFullTables() {
+        Iterator<Map.Entry<String, PendingTable>> it = this.creatingTables.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, PendingTable> e = it.next();
+            if (e.getValue().records.size() >= this.maxParkedRecords) {
+                log.info("{} records parked for table {}, waiting for it to be ready",
+                         e.getValue().records.size(), e.getKey());
+                it.remove();
+                release(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void release(String tableName, PendingTable p) throws DataException {
+        Table table;
+        try {
+            table = p.table.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DataException("Unable to create table '" + tableName + "'", e.getCause());
+        }
+
+        TableInfo t = this.tableRegistry.get(tableName);
+        if (t == null) {
+            log.info("Adding table to registry: {}", tableName);
+            t = this.tableRegistry.put(tableName, table);
+            assignShardSize(t, p.records.get(0));
+            writerFor(tableName).register(t);
+        } else if (t.hasOffset() == false) {
+            writerFor(tableName).register(t);
+        }
+
+        log.debug("Releasing {} records parked for table {}", p.records.size(), tableName);
+        write(t, p.records);
+        for (SinkRecord s : p.records) {
+            track(s, tableName);
+        }
+    }
+
     @Override
     public void put(Collection<SinkRecord> records) {
-        log.info("Append {} records to QuasarDB writer", records.size());
+        log.info("Append {} records to QuasarDB writer", records.size());
+
+        this.tableRegistry.expire();
+
+        if (this.rawJson) {
+            records = parseRawJson(records);
+        }
+
+        List<SinkRecord> list = asList(records);
+        String[] names = new String[list.size()];
+        this.tableResolver.resolveAll(list, names);
+
+        if (this.dedupCapacity > 0) {
+            list = dropReplayed(list, names);
+        }
+
+        try {
+            if (this.createExecutor != null) {
+                releaseCreatedTables(false);
+            }
+
+            if (this.conversionPool != null && list.size() > this.conversionChunkSize) {
+                putParallel(list, names);
+            } else if (this.batched) {
+                putBatched(list, names);
+            } else {
+                TableInfo[] tables = resolveTables(list, names);
+
+                for (int i = 0; i < tables.length; ++i) {
+                    if (tables[i] != null) {
+                        write(tables[i], list.get(i));
+                        track(list.get(i), names[i]);
+                    }
+                }
+            }
+
+            if (this.createExecutor != null) {
+                releaseFullTables();
+            }
+        } catch (RuntimeException e) {
+            // Rows remembered before the failure may not have made it to the
+            // writer, so the whole batch is written again when redelivered.
+            forgetReplayFilters(list);
+            throw e;
+        }
+
+        retireEvicted();
+
+        if (this.flushLingerMs > 0 && this.unflushedRows > 0
+            && System.currentTimeMillis() - this.firstUnflushedAt >= this.flushLingerMs) {
+            flushAll(FlushTrigger.LINGER);
+        }
+
+        if (this.memoryBudget > 0) {
+            applyBackpressure();
+        }
+
+        this.metrics.buffered(this.unflushedRows, this.unflushedBytes);
+    }
+
+    /**
+     * Parses the values of records holding raw JSON into their top-level
+     * fields, which the resolvers and converters read like a Map.
+     */
+    private static Collection<SinkRecord> parseRawJson(Collection<SinkRecord> records) {
+        List<SinkRecord> out = new ArrayList<>(records.size());
 
         for (SinkRecord s : records) {
-            String tableName = this.tableResolver.resolve(s);
-            TableInfo t = this.tableRegistry.get(tableName);
+            Object value = s.value();
+            JsonFields fields;
+
+            if (value instanceof byte[]) {
+                fields = JsonFields.parse((byte[]) value);
+            } else if (value instanceof String) {
+                fields = JsonFields.parse((String) value);
+            } else {
+                out.add(s);
+                continue;
+            }
+
+            out.add(s.newRecord(s.topic(), s.kafkaPartition(), s.keySchema(), s.key(),
+                                null, fields, s.timestamp(), s.headers()));
+        }
+
+        return out;
+    }
+
+    /**
+     * Drops records of rows that were already written since the offsets of
+     * their partition were last committed.
+     *
+     * @param names Table names of the records. The names of the records kept
+     *              are moved to the front, in the same order.
+     */
+    private List<SinkRecord> dropReplayed(List<SinkRecord> records, String[] names) {
+        List<SinkRecord> out = new ArrayList<>(records.size());
+        ReplayFilter f = null;
+        String lastTopic = null;
+        Integer lastPartition = null;
+
+        for (int i = 0; i < records.size(); ++i) {
+            SinkRecord s = records.get(i);
+
+            if (s.kafkaPartition() == null) {
+                names[out.size()] = names[i];
+                out.add(s);
+                continue;
+            }
+
+            if (f == null || !s.topic().equals(lastTopic) || !s.kafkaPartition().equals(lastPartition)) {
+                lastTopic = s.topic();
+                lastPartition = s.kafkaPartition();
+                f = replayFilter(new TopicPartition(lastTopic, lastPartition));
+            }
+
+            if (f.contains(rowHash(s, names[i]), s.kafkaOffset())) {
+                // Already written, but the offset still counts as consumed
+                track(s);
+            } else {
+                names[out.size()] = names[i];
+                out.add(s);
+            }
+        }
+
+        int dropped = records.size() - out.size();
+        if (dropped > 0) {
+            log.info("Dropped {} replayed records", dropped);
+            this.metrics.replayedDropped(dropped);
+        }
+
+        return out;
+    }
 
+    /**
+     * Hash of the row a record is written as: its table, and the record's
+     * timestamp and value from which the row's timestamp and cells are taken.
+     */
+    private static long rowHash(SinkRecord s, String tableName) {
+        Object value = s.value();
+
+        long h = Objects.hashCode(tableName);
+        h = h * 31 + Objects.hashCode(s.timestamp());
+        h = h * 31 + (value instanceof byte[] ? Arrays.hashCode((byte[]) value) : Objects.hashCode(value));
+        return h;
+    }
+
+    private ReplayFilter replayFilter(TopicPartition tp) {
+        return this.replayFilters.computeIfAbsent(tp, k -> new ReplayFilter(this.dedupCapacity, this.dedupFalsePositiveRate));
+    }
+
+    /**
+     * Forgets the rows of the partitions of records whose put failed.
+     */
+    private void forgetReplayFilters(List<SinkRecord> records) {
+        if (this.replayFilters.isEmpty()) {
+            return;
+        }
+
+        for (SinkRecord s : records) {
+            if (s.kafkaPartition() != null) {
+                this.replayFilters.remove(new TopicPartition(s.topic(), s.kafkaPartition()));
+            }
+        }
+    }
+
+    /**
+     * Forgets the rows of partitions whose offsets are committed past all rows
+     * remembered, and of partitions no longer assigned to this task.
+     */
+    private void discardReplayFilters(Map<TopicPartition, OffsetAndMetadata> committed) {
+        if (this.replayFilters.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> e : committed.entrySet()) {
+            ReplayFilter f = this.replayFilters.get(e.getKey());
+            if (f != null && e.getValue().offset() > f.getMaxOffset()) {
+                this.replayFilters.remove(e.getKey());
+            }
+        }
+
+        if (this.context != null) {
+            this.replayFilters.keySet().retainAll(this.context.assignment());
+        }
+    }
+
+    /**
+     * Writes the remaining rows of tables evicted from the registry and detaches
+     * them from their writers. Only called once all records of a put were
+     * written, as records resolved earlier may still refer to evicted tables.
+     */
+    private void retireEvicted() {
+        List<TableInfo> evicted = this.tableRegistry.takeEvicted();
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        // Buffers in flight are drained using the offsets of their tables, which
+        // detaching resets.
+        if (this.asyncFlush) {
+            awaitPendingFlush();
+        }
+
+        log.debug("Detaching {} evicted tables", evicted.size());
+
+        for (TableInfo t : evicted) {
+            this.pendingTables.remove(t);
+
+            TableWriter w = t.getWriter();
+            if (w == null) {
+                continue;
+            }
+
+            try {
+                if (t.hasBufferedRows()) {
+                    w.drain(t, t.getBuffer());
+                }
+                w.detach(t);
+            } catch (IOException e) {
+                log.error("Unable to detach table {}: {}", t.getTable().getName(), e.getMessage());
+                throw new RuntimeException(e);
+            }
+        }
+
+        this.metrics.evicted(evicted.size());
+    }
+
+    /**
+     * Keeps the rows in flight under the memory budget. When flushing
+     * synchronously, exceeding the budget simply flushes, which blocks the task
+     * until the rows are written. When flushing asynchronously, all assigned
+     * partitions are paused until the flush thread brought the rows in flight
+     * back under the low-water mark. Connect keeps calling put while partitions
+     * are paused, which is where they are resumed.
+     */
+    private void applyBackpressure() {
+        long inFlight = this.unflushedBytes + this.flushingBytes;
+
+        if (!this.paused && inFlight > this.memoryBudget) {
+            if (!this.asyncFlush) {
+                log.info("{} bytes in flight exceed memory budget of {}, flushing", inFlight, this.memoryBudget);
+                flushAll(FlushTrigger.MEMORY);
+                return;
+            }
+
+            TopicPartition[] partitions = this.context.assignment().toArray(new TopicPartition[0]);
+            log.info("{} bytes in flight exceed memory budget of {}, pausing {} partitions",
+                     inFlight, this.memoryBudget, partitions.length);
+
+            this.context.pause(partitions);
+            this.paused = true;
+            this.metrics.paused(true);
+
+            // Get the staged rows moving, unless the flush thread is still busy
+            if (this.pendingFlush == null || this.pendingFlush.isDone()) {
+                flushAll(FlushTrigger.MEMORY);
+            }
+        } else if (this.paused && inFlight > this.memoryLowWater) {
+            // Rows staged while the previous flush was running keep us above the
+            // low-water mark, flush those as well once the flush thread is idle.
+            if (this.pendingFlush == null || this.pendingFlush.isDone()) {
+                flushAll(FlushTrigger.MEMORY);
+            }
+        } else if (this.paused) {
+            TopicPartition[] partitions = this.context.assignment().toArray(new TopicPartition[0]);
+            log.info("{} bytes in flight, resuming {} partitions", inFlight, partitions.length);
+
+            this.context.resume(partitions);
+            this.paused = false;
+            this.metrics.paused(false);
+        }
+    }
+
+    /**
+     * Resolves the tables of all records first and groups the records per table,
+     * preserving their order within a table, after which every group is handed to
+     * the record writer as a single block.
+     */
+    private void putBatched(List<SinkRecord> list, String[] names) {
+        TableInfo[] tables = resolveTables(list, names);
+
+        Map<TableInfo, List<SinkRecord>> groups = new LinkedHashMap<>();
+        List<SinkRecord> lastGroup = null;
+
+        for (int i = 0; i < tables.length; ++i) {
+            if (tables[i] == null) {
+                continue;
+            }
+
+            if (lastGroup == null || tables[i] != tables[i - 1]) {
+                lastGroup = groups.computeIfAbsent(tables[i], k -> new ArrayList<>());
+            }
+
+            lastGroup.add(list.get(i));
+        }
+
+        log.debug("Grouped {} records into {} tables", list.size(), groups.size());
+
+        for (Map.Entry<TableInfo, List<SinkRecord>> group : groups.entrySet()) {
+            write(group.getKey(), group.getValue());
+        }
+
+        // Only track offsets once all groups were written, so that a flush
+        // triggered halfway never reports offsets of records not yet written.
+        track(list, names, tables);
+    }
+
+    /**
+     * Splits the records into chunks which are converted in parallel, each
+     * into private buffers per table. The converted chunks are then appended
+     * to the tables' buffers on the task thread, in their original order.
+     */
+    private void putParallel(List<SinkRecord> list, String[] names) {
+        TableInfo[] tables = resolveTables(list, names);
+
+        List<ForkJoinTask<Map<TableInfo, TableBuffer>>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += this.conversionChunkSize) {
+            int start = from;
+            int end = Math.min(list.size(), from + this.conversionChunkSize);
+
+            chunks.add(this.conversionPool.submit(() -> convertChunk(list, tables, start, end)));
+        }
+
+        log.debug("Converting {} records in {} chunks", list.size(), chunks.size());
+
+        for (ForkJoinTask<Map<TableInfo, TableBuffer>> chunk : chunks) {
+            for (Map.Entry<TableInfo, TableBuffer> converted : chunk.join().entrySet()) {
+                TableInfo t = converted.getKey();
+                TableBuffer b = t.getBuffer();
+                long before = b.estimatedBytes();
+
+                b.appendAll(converted.getValue());
+                written(t, converted.getValue().size(), b.estimatedBytes() - before);
+            }
+        }
+
+        track(list, names, tables);
+    }
+
+    private Map<TableInfo, TableBuffer> convertChunk(List<SinkRecord> records, TableInfo[] tables, int start, int end) {
+        // Size each table's buffer to its own share of the chunk, rather than
+        // to the whole chunk.
+        Map<TableInfo, int[]> counts = new HashMap<>();
+        for (int i = start; i < end; ++i) {
+            if (tables[i] != null) {
+                ++counts.computeIfAbsent(tables[i], k -> new int[1])[0];
+            }
+        }
+
+        Map<TableInfo, TableBuffer> out = new LinkedHashMap<>();
+
+        for (int i = start; i < end; ++i) {
+            TableInfo t = tables[i];
             if (t == null) {
-                t = addTableToRegistry(tableName, s);
+                continue;
             }
 
-            if (t.hasOffset() == false) {
-                t.setOffset(this.writer.tableIndexByName(t.getTable().getName()));
+            TableBuffer b = out.get(t);
+            if (b == null) {
+                b = new TableBuffer(t.getTable().getColumns(), counts.get(t)[0]);
+                out.put(t, b);
             }
 
-            this.recordWriter.write(this.writer, t, s);
+            this.recordWriter.stage(b, t, records.get(i));
         }
+
+        return out;
     }
 
-    @Override
-    public void flush(Map<TopicPartition, OffsetAndMetadata> partitionOffsets) {
+    /**
+     * Resolves the table of every record. Records tend to arrive in runs for
+     * the same table, so we only go to the registry when the table name changes.
+     * Records that were parked have no table.
+     *
+     * @param names Table names of the records, as resolved by the table resolver.
+     */
+    private TableInfo[] resolveTables(List<SinkRecord> records, String[] names) {
+        TableInfo[] out = new TableInfo[records.size()];
+        String lastName = null;
+
+        for (int i = 0; i < out.length; ++i) {
+            String tableName = names[i];
+
+            if (i == 0 || out[i - 1] == null || (lastName != tableName && !lastName.equals(tableName))) {
+                out[i] = resolveTable(tableName, records.get(i));
+                lastName = tableName;
+            } else {
+                out[i] = out[i - 1];
+            }
+        }
+
+        return out;
+    }
+
+    private static List<SinkRecord> asList(Collection<SinkRecord> records) {
+        return records instanceof List ? (List<SinkRecord>) records : new ArrayList<>(records);
+    }
+
+    private void write(TableInfo t, SinkRecord s) {
+        if (this.buffered) {
+            TableBuffer b = t.getBuffer();
+            int rows = b.size();
+            long before = b.estimatedBytes();
+
+            this.recordWriter.stage(t, s);
+            written(t, b.size() - rows, b.estimatedBytes() - before);
+        } else {
+            this.recordWriter.write(t.getWriter().getWriter(), t, s);
+
+            int rows = this.recordWriter.rowsOf(s);
+            written(t, rows, estimateBytes(t, rows));
+        }
+    }
+
+    private void write(TableInfo t, List<SinkRecord> records) {
+        if (this.buffered) {
+            TableBuffer b = t.getBuffer();
+            int rows = b.size();
+            long before = b.estimatedBytes();
+
+            this.recordWriter.stage(t, records);
+            written(t, b.size() - rows, b.estimatedBytes() - before);
+        } else {
+            this.recordWriter.write(t.getWriter().getWriter(), t, records);
+
+            int rows = 0;
+            for (SinkRecord s : records) {
+                rows += this.recordWriter.rowsOf(s);
+            }
+            written(t, rows, estimateBytes(t, rows));
+        }
+    }
+
+    /**
+     * Rough estimate of the memory held by the writer for rows that were
+     * appended to it directly.
+     */
+    private static long estimateBytes(TableInfo t, int rows) {
+        return rows * (8L + 16L * t.getTable().getColumns().length);
+    }
+
+    /**
+     * Accounts for rows written to a table, and flushes when any of the size
+     * based flush thresholds is reached.
+     */
+    private void written(TableInfo t, int rows, long bytes) {
+        if (this.unflushedRows == 0) {
+            this.firstUnflushedAt = System.currentTimeMillis();
+        }
+
+        this.unflushedRows += rows;
+        this.unflushedBytes += bytes;
+
+        if (this.buffered) {
+            staged(t);
+        }
+
+        if (this.flushMaxRows > 0 && this.unflushedRows >= this.flushMaxRows) {
+            flushAll(FlushTrigger.ROWS);
+        } else if (this.flushMaxBytes > 0 && this.unflushedBytes >= this.flushMaxBytes) {
+            flushAll(FlushTrigger.BYTES);
+        }
+    }
+
+    /**
+     * Called after rows were staged into a table's buffer, pushes the buffer to
+     * the writer when it reached its maximum size.
+     */
+    private void staged(TableInfo t) {
+        if (t.getBuffer().size() < this.bufferMaxRows) {
+            this.pendingTables.add(t);
+        } else if (this.asyncFlush) {
+            // The writer belongs to the flush thread, so hand over everything
+            this.pendingTables.add(t);
+            flushAll(FlushTrigger.TABLE_ROWS);
+        } else {
+            drain(t);
+        }
+    }
+
+    /**
+     * Keeps track of the highest offset put per partition, only needed when
+     * offsets are reported from preCommit.
+     */
+    private void track(SinkRecord s) {
+        if (this.asyncFlush && s.kafkaPartition() != null) {
+            this.consumedOffsets.merge(new TopicPartition(s.topic(), s.kafkaPartition()),
+                                       s.kafkaOffset() + 1, Math::max);
+        }
+    }
+
+    /**
+     * Tracks the offset of a record whose row was written, and remembers the
+     * row so that it is dropped when the record is replayed.
+     */
+    private void track(SinkRecord s, String tableName) {
+        track(s);
+
+        if (this.dedupCapacity > 0 && s.kafkaPartition() != null) {
+            replayFilter(new TopicPartition(s.topic(), s.kafkaPartition())).add(rowHash(s, tableName), s.kafkaOffset());
+        }
+    }
+
+    private void track(List<SinkRecord> records, String[] names, TableInfo[] tables) {
+        for (int i = 0; i < tables.length; ++i) {
+            if (tables[i] != null) {
+                track(records.get(i), names[i]);
+            }
+        }
+    }
+
+    private void drain(TableInfo t) {
         try {
-            if (this.writer != null) {
-                log.info("Flush request received, flushing writer");
-                this.writer.flush();
+            t.getWriter().drain(t, t.getBuffer());
+        } catch (IOException e) {
+            log.error("Unable to write buffered rows of table {}: {}", t.getTable().getName(), e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Swaps the buffers of all tables with pending rows and pushes the swapped
+     * buffers to the writers on the flush threads, after which the offsets put
+     * so far are marked as flushed. Waits for the previous flush to complete
+     * first, as its buffers are the spare buffers that are swapped in.
+     */
+    private void flushAsync(long bytes) {
+        awaitPendingFlush();
+        this.flushingBytes = bytes;
+
+        List<TableInfo> tables = new ArrayList<>(this.pendingTables.size());
+        List<TableBuffer> buffers = new ArrayList<>(this.pendingTables.size());
+        for (TableInfo t : this.pendingTables) {
+            if (t.hasBufferedRows()) {
+                tables.add(t);
+                buffers.add(t.swapBuffer());
             }
-        } catch (Exception e) {
+        }
+        this.pendingTables.clear();
+
+        // Records still parked are not part of this flush, later records of
+        // their partitions may only be committed once they are.
+        Map<TopicPartition, Long> offsets = new HashMap<>(this.consumedOffsets);
+        capToParkedOffsets(offsets);
+
+        log.debug("Flushing {} tables asynchronously", tables.size());
+        this.pendingFlush = flushWriters(tables, buffers).thenRun(() -> {
+                offsets.forEach((tp, offset) -> this.flushedOffsets.merge(tp, offset, Math::max));
+                this.flushingBytes = 0;
+            });
+    }
+
+    /**
+     * Lowers the offsets of partitions that have records parked to the lowest
+     * offset parked, which has not been written yet.
+     */
+    private void capToParkedOffsets(Map<TopicPartition, Long> offsets) {
+        for (PendingTable p : this.creatingTables.values()) {
+            p.lowestOffsets.forEach((tp, lowest) -> offsets.computeIfPresent(tp, (k, offset) -> Math.min(offset, lowest)));
+        }
+    }
+
+    /**
+     * Pushes the buffers of the given tables to their writers and flushes every
+     * writer. Writers are flushed concurrently on the flush threads when there
+     * are any, otherwise on the calling thread.
+     */
+    private CompletableFuture<Void> flushWriters(List<TableInfo> tables, List<TableBuffer> buffers) {
+        List<List<TableInfo>> tablesPerWriter = new ArrayList<>(this.writers.length);
+        List<List<TableBuffer>> buffersPerWriter = new ArrayList<>(this.writers.length);
+        for (int i = 0; i < this.writers.length; ++i) {
+            tablesPerWriter.add(new ArrayList<>());
+            buffersPerWriter.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < tables.size(); ++i) {
+            int id = tables.get(i).getWriter().getId();
+            tablesPerWriter.get(id).add(tables.get(i));
+            buffersPerWriter.get(id).add(buffers.get(i));
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[this.writers.length];
+        for (int i = 0; i < this.writers.length; ++i) {
+            TableWriter w = this.writers[i];
+            List<TableInfo> ts = tablesPerWriter.get(i);
+            List<TableBuffer> bs = buffersPerWriter.get(i);
+
+            Runnable job = () -> {
+                try {
+                    w.flush(ts, bs);
+                } catch (IOException e) {
+                    log.error("Unable to flush writer {}: {}", w.getId(), e.getMessage());
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            if (this.flushExecutor == null) {
+                job.run();
+                futures[i] = CompletableFuture.completedFuture(null);
+            } else {
+                futures[i] = CompletableFuture.runAsync(job, this.flushExecutor);
+            }
+        }
+
+        return CompletableFuture.allOf(futures);
+    }
+
+    private void awaitPendingFlush() {
+        try {
+            await(this.pendingFlush);
+        } finally {
+            this.pendingFlush = null;
+        }
+    }
+
+    private static void await(Future<?> f) {
+        if (f == null) {
+            return;
+        }
+
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            log.error("Flush failed: {}", e.getCause().getMessage());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Flushes all rows written so far. When flushing asynchronously this only
+     * starts the flush.
+     */
+    private void flushAll(FlushTrigger trigger) {
+        log.debug("Flushing {} rows, triggered by {}", this.unflushedRows, trigger);
+
+        this.metrics.flushed(trigger);
+        long bytes = this.unflushedBytes;
+        this.unflushedRows = 0;
+        this.unflushedBytes = 0;
+
+        if (this.asyncFlush) {
+            flushAsync(bytes);
+            return;
+        }
+
+        List<TableInfo> tables = new ArrayList<>(this.pendingTables.size());
+        List<TableBuffer> buffers = new ArrayList<>(this.pendingTables.size());
+        for (TableInfo t : this.pendingTables) {
+            if (t.hasBufferedRows()) {
+                tables.add(t);
+                buffers.add(t.getBuffer());
+            }
+        }
+        this.pendingTables.clear();
+
+        await(flushWriters(tables, buffers));
+    }
+
+    @Override
+    public void flush(Map<TopicPartition, OffsetAndMetadata> partitionOffsets) {
+        log.info("Flush request received, flushing writer");
+
+        // Offsets of parked records are about to be committed
+        if (this.createExecutor != null) {
+            releaseCreatedTables(true);
+        }
+
+        flushAll(FlushTrigger.COMMIT);
+
+        if (this.asyncFlush) {
+            awaitPendingFlush();
         }
+
+        discardReplayFilters(partitionOffsets);
+    }
+
+    /**
+     * When flushing asynchronously, starts a flush of everything put so far
+     * without waiting for it, and only reports offsets of records whose flush
+     * completed.
+     */
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> preCommit(Map<TopicPartition, OffsetAndMetadata> currentOffsets) {
+        if (!this.asyncFlush) {
+            return super.preCommit(currentOffsets);
+        }
+
+        // Writes the parked records of the tables that are ready, so that they
+        // are part of the flush. Records of tables still being created keep
+        // the offsets of their partitions from being committed.
+        if (this.createExecutor != null) {
+            releaseCreatedTables(false);
+        }
+
+        flushAll(FlushTrigger.COMMIT);
+
+        Map<TopicPartition, Long> offsets = new HashMap<>(currentOffsets.size());
+        for (TopicPartition tp : currentOffsets.keySet()) {
+            Long offset = this.flushedOffsets.get(tp);
+            if (offset != null) {
+                offsets.put(tp, offset);
+            }
+        }
+        capToParkedOffsets(offsets);
+
+        Map<TopicPartition, OffsetAndMetadata> out = new HashMap<>(offsets.size());
+        offsets.forEach((tp, offset) -> out.put(tp, new OffsetAndMetadata(offset)));
+
+        discardReplayFilters(out);
+
+        log.debug("Committing flushed offsets: {}", out);
+        return out;
+    }
+
+    @Override
+    public void close(Collection<TopicPartition> partitions) {
+        for (TopicPartition tp : partitions) {
+            this.consumedOffsets.remove(tp);
+            this.flushedOffsets.remove(tp);
+        }
+    }
+
+    /**
+     * Visible for testing.
+     */
+    TableRegistry getTableRegistry() {
+        return this.tableRegistry;
+    }
+
+    /**
+     * Visible for testing.
+     */
+    Map<TopicPartition, Long> getFlushedOffsets() {
+        return this.flushedOffsets;
     }
 }
@@ -0,0 +1,35 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import net.quasardb.qdb.ts.Column;
+
+public class ColumnIndexTest {
+
+    /**
+     * Tests that every column is found at its index, for small and wide tables.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 7, 64, 1000 })
+    public void testLookupColumns(int count) {
+        Column[] columns = TestUtils.generateTableColumns(count);
+        ColumnIndex index = new ColumnIndex(columns);
+
+        assertEquals(count, index.size());
+
+        for (int i = 0; i < count; ++i) {
+            // Different String instance than the one in the index
+            String name = new String(columns[i].getName());
+
+            assertEquals(i, index.indexOf(name));
+            assertSame(columns[i], index.columnAt(i));
+        }
+
+        assertEquals(-1, index.indexOf(TestUtils.createUniqueAlias()));
+        assertEquals(-1, index.indexOf(null));
+    }
+}
@@ -0,0 +1,51 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.connect.errors.DataException;
+import org.junit.jupiter.api.Test;
+
+public class ConnectorUtilsTest {
+
+    /**
+     * Tests that routes are split on their first '=', and that regular
+     * expressions can hold an escaped '=' or ','.
+     */
+    @Test
+    public void testParseRoutes() {
+        // As Connect splits "a{1\,3}=t1,(?\=k).*=${topic}=x,b=t2"
+        Map<String, String> routes = ConnectorUtils.parseTableFromTopic(
+            Arrays.asList("a{1\\", "3}=t1", "(?\\=k).*=${topic}=x", "b=t2"));
+
+        Iterator<Map.Entry<String, String>> it = routes.entrySet().iterator();
+
+        Map.Entry<String, String> e = it.next();
+        assertEquals("a{1,3}", e.getKey());
+        assertEquals("t1", e.getValue());
+        assertTrue(Pattern.matches(e.getKey(), "aaa"));
+
+        e = it.next();
+        assertEquals("(?=k).*", e.getKey());
+        assertEquals("${topic}=x", e.getValue());
+        assertTrue(Pattern.matches(e.getKey(), "key"));
+
+        e = it.next();
+        assertEquals("b", e.getKey());
+        assertEquals("t2", e.getValue());
+    }
+
+    @Test
+    public void testParseInvalidRoutes() {
+        assertThrows(DataException.class, () -> ConnectorUtils.parseTableFromTopic(Arrays.asList("a")));
+        assertThrows(DataException.class, () -> ConnectorUtils.parseTableFromTopic(Arrays.asList("=t")));
+        assertThrows(DataException.class, () -> ConnectorUtils.parseTableFromTopic(Arrays.asList("a=")));
+        assertThrows(DataException.class, () -> ConnectorUtils.parseTableFromTopic(Arrays.asList("a\\")));
+    }
+}
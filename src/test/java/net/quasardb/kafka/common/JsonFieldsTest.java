@@ -0,0 +1,48 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.connect.errors.DataException;
+import org.junit.jupiter.api.Test;
+
+public class JsonFieldsTest {
+
+    /**
+     * Tests that top-level fields are parsed like the JsonConverter would, and
+     * that nested values are skipped.
+     */
+    @Test
+    public void testParse() {
+        String json = "{\"site\": \"paris\", \"count\": 42, \"temp\": 21.5, \"ok\": true, "
+            + "\"nested\": {\"a\": [1, 2]}, \"none\": null, \"big\": 12345678901234567890}";
+        JsonFields fields = JsonFields.parse(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(6, fields.size());
+        assertEquals("paris", fields.get("site"));
+        assertEquals(42L, fields.get("count"));
+        assertEquals(21.5, fields.get("temp"));
+        assertEquals(Boolean.TRUE, fields.get("ok"));
+        assertEquals(1.2345678901234567e19, fields.get("big"));
+        assertNull(fields.get("none"));
+        assertNull(fields.get("nested"));
+
+        int count = fields.indexOf("count", 1);
+        assertEquals(1, count);
+        assertEquals(JsonFields.Kind.LONG, fields.kindAt(count));
+        assertEquals(42L, fields.longAt(count));
+        assertEquals(2, fields.indexOf("temp", 0));
+
+        assertEquals(fields, JsonFields.parse(json));
+        assertEquals(fields.hashCode(), JsonFields.parse(json).hashCode());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertThrows(DataException.class, () -> JsonFields.parse("[1, 2]"));
+        assertThrows(DataException.class, () -> JsonFields.parse("{\"a\": "));
+    }
+}
@@ -0,0 +1,51 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ReplayFilterTest {
+
+    /**
+     * Tests that replayed rows are recognized, and that rows past the highest
+     * offset seen are always passed, even when their hash was seen before.
+     */
+    @Test
+    public void testReplay() {
+        ReplayFilter f = new ReplayFilter(1000, 0.000001);
+
+        for (long i = 0; i < 100; ++i) {
+            assertFalse(f.contains(i, i));
+            f.add(i, i);
+        }
+        assertEquals(99, f.getMaxOffset());
+
+        for (long i = 0; i < 100; ++i) {
+            assertTrue(f.contains(i, i));
+        }
+
+        assertFalse(f.contains(0, 100));
+        assertFalse(f.contains(-1, 50));
+    }
+
+    /**
+     * Tests that rows which were only checked, but never added, are not taken
+     * for replays.
+     */
+    @Test
+    public void testContainsDoesNotAdd() {
+        ReplayFilter f = new ReplayFilter(1000, 0.000001);
+
+        for (long i = 0; i < 100; ++i) {
+            assertFalse(f.contains(i, i));
+        }
+        assertEquals(-1, f.getMaxOffset());
+
+        f.add(0, 99);
+        for (long i = 1; i < 100; ++i) {
+            assertFalse(f.contains(i, i));
+        }
+    }
+}
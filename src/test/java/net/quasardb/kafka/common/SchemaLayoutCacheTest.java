@@ -0,0 +1,94 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.DataException;
+
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Value;
+
+public class SchemaLayoutCacheTest {
+
+    /**
+     * Tests that fields map to columns of their type, in schema order, and
+     * that fields without a column type are left out.
+     */
+    @Test
+    public void testInferSkipsUnsupportedFields() {
+        Schema schema = SchemaBuilder.struct()
+            .name("measure")
+            .field("int64", Schema.INT64_SCHEMA)
+            .field("int32", Schema.INT32_SCHEMA)
+            .field("double", Schema.FLOAT64_SCHEMA)
+            .field("bool", Schema.BOOLEAN_SCHEMA)
+            .field("string", Schema.STRING_SCHEMA)
+            .field("decimal", Decimal.schema(2))
+            .field("bytes", Schema.BYTES_SCHEMA)
+            .field("array", SchemaBuilder.array(Schema.INT64_SCHEMA).build())
+            .field("time", Timestamp.SCHEMA)
+            .build();
+
+        Column[] columns = new SchemaLayoutCache().get(schema);
+
+        String[] names = { "int64", "double", "string", "bytes", "time" };
+        Value.Type[] types = { Value.Type.INT64, Value.Type.DOUBLE, Value.Type.BLOB, Value.Type.BLOB, Value.Type.TIMESTAMP };
+
+        assertEquals(names.length, columns.length);
+        for (int i = 0; i < columns.length; ++i) {
+            assertEquals(names[i], columns[i].getName());
+            assertEquals(types[i], columns[i].getType());
+        }
+    }
+
+    /**
+     * Tests that a layout cannot be derived from a schema that is not a struct,
+     * or that has no field of a supported type.
+     */
+    @Test
+    public void testRejectsSchemasWithoutColumns() {
+        SchemaLayoutCache cache = new SchemaLayoutCache();
+
+        assertThrows(DataException.class, () -> cache.get(null));
+        assertThrows(DataException.class, () -> cache.get(Schema.INT64_SCHEMA));
+        assertThrows(DataException.class, () -> cache.get(SchemaBuilder.struct()
+                                                         .field("bool", Schema.BOOLEAN_SCHEMA)
+                                                         .build()));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests that layouts are cached per schema, and that the least recently
+     * used layout is dropped once the cache is full.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        SchemaLayoutCache cache = new SchemaLayoutCache(2);
+
+        Schema[] schemas = new Schema[3];
+        for (int i = 0; i < schemas.length; ++i) {
+            schemas[i] = SchemaBuilder.struct()
+                .name("schema" + i)
+                .field("value" + i, Schema.INT64_SCHEMA)
+                .build();
+        }
+
+        Column[] first = cache.get(schemas[0]);
+        Column[] second = cache.get(schemas[1]);
+        assertSame(first, cache.get(schemas[0]));
+
+        cache.get(schemas[2]);
+        assertEquals(2, cache.size());
+
+        assertSame(first, cache.get(schemas[0]));
+        assertNotSame(second, cache.get(schemas[1]));
+    }
+}
@@ -0,0 +1,146 @@
+package net.quasardb.kafka.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Value;
+
+public class TableBufferTest {
+
+    /**
+     * Tests that rows with a lower timestamp than their predecessor are
+     * counted, across appends and truncation.
+     */
+    @Test
+    public void testDisorder() {
+        Column[] columns = TestUtils.generateTableColumns(2);
+
+        TableBuffer b = new TableBuffer(columns, 16);
+        for (long ts : new long[] { 1, 2, 3, 2, 3, 1 }) {
+            b.addRow(ts, true);
+        }
+        assertEquals(2, b.disorder());
+
+        TableBuffer other = new TableBuffer(columns, 16);
+        other.addRow(0, true);
+        other.addRow(5, true);
+        other.addRow(4, true);
+
+        b.appendAll(other);
+        assertEquals(4, b.disorder());
+
+        b.truncate(4);
+        assertEquals(1, b.disorder());
+
+        b.clear();
+        assertEquals(0, b.disorder());
+    }
+
+    /**
+     * Tests that only recent rows with the same timestamp in which the column
+     * is not set yet are found for coalescing.
+     */
+    @Test
+    public void testFindRow() {
+        TableBuffer b = new TableBuffer(TestUtils.generateTableColumns(2), 16);
+
+        int first = b.addRow(1, false);
+        b.setDouble(0, first, 1.0);
+        b.addRow(2, false);
+        b.addRow(3, false);
+
+        assertEquals(first, b.findRow(1, 1, 3));
+        assertEquals(-1, b.findRow(1, 0, 3));
+        assertEquals(-1, b.findRow(1, 1, 2));
+        assertEquals(-1, b.findRow(4, 1, 3));
+
+        assertFalse(b.isDense(first));
+        b.coalesce(first);
+        assertTrue(b.isDense(first));
+    }
+
+    /**
+     * Tests that clearing a cell unsets it and gives back its estimated bytes.
+     */
+    @Test
+    public void testClearCell() {
+        Column[] columns = { TestUtils.generateTableColumn(Value.Type.DOUBLE),
+                             TestUtils.generateTableColumn(Value.Type.BLOB) };
+        TableBuffer b = new TableBuffer(columns, 16);
+
+        int row = b.addRow(1, false);
+        long before = b.estimatedBytes();
+
+        b.setDouble(0, row, 1.0);
+        b.setBlob(1, row, "some blob");
+        assertTrue(b.isSet(0, row));
+        assertTrue(b.isSet(1, row));
+
+        b.clearCell(0, row);
+        b.clearCell(1, row);
+        assertFalse(b.isSet(0, row));
+        assertFalse(b.isSet(1, row));
+        assertEquals(before, b.estimatedBytes());
+
+        // Clearing a cell that is not set changes nothing
+        b.clearCell(1, row);
+        assertEquals(before, b.estimatedBytes());
+    }
+
+    /**
+     * Tests that rows are drained grouped per shard, keeping the order they
+     * were added in within a shard, and that the writer is flushed between
+     * shards only when asked to.
+     */
+    @Test
+    public void testDrainPerShard() throws IOException {
+        // Two partitions, each in timestamp order, with shards of 10ns
+        long[] timestamps = { 5, 12, 25, 3, 14, 27 };
+
+        assertEquals(Arrays.asList("5", "3", "flush", "12", "14", "flush", "25", "27"),
+                     drain(timestamps, TableBuffer.Order.SHARD, true));
+        assertEquals(Arrays.asList("5", "3", "12", "14", "25", "27"),
+                     drain(timestamps, TableBuffer.Order.SHARD, false));
+        assertEquals(Arrays.asList("3", "5", "flush", "12", "14", "flush", "25", "27"),
+                     drain(timestamps, TableBuffer.Order.TIMESTAMP, true));
+        assertEquals(Arrays.asList("5", "12", "25", "3", "14", "27"),
+                     drain(timestamps, TableBuffer.Order.ARRIVAL, true));
+    }
+
+    /**
+     * Drains sparse rows with the given timestamps, and returns the timestamps
+     * appended and the flushes in the order they happened.
+     */
+    private static List<String> drain(long[] timestamps, TableBuffer.Order order, boolean flushPerShard) throws IOException {
+        TableBuffer b = new TableBuffer(TestUtils.generateTableColumns(1), 16);
+        for (long ts : timestamps) {
+            b.setDouble(0, b.addRow(ts, false), ts);
+        }
+
+        List<String> out = new ArrayList<>();
+        b.drainTo(new TableBuffer.Sink() {
+                @Override
+                public void append(int offset, Timespec ts, Value[] values) {
+                    out.add(Long.toString(TableBuffer.toNanos(ts)));
+                }
+
+                @Override
+                public void flush() {
+                    out.add("flush");
+                }
+            }, 0, order, 10, flushPerShard);
+
+        assertEquals(0, b.size());
+        return out;
+    }
+}
@@ -0,0 +1,65 @@
+package net.quasardb.kafka.common.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class TaskMetricsTest {
+
+    private static final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    /**
+     * Tests that the metrics of a table are exposed next to the metrics of its
+     * task, and go away with the table or the task.
+     */
+    @Test
+    public void testTableMetrics() throws Exception {
+        ObjectName taskName = new ObjectName("net.quasardb.kafka:type=QdbSinkTask,connector=test,task=3");
+        ObjectName tableName = new ObjectName("net.quasardb.kafka:type=QdbSinkTable,connector=test,task=3,table=t1");
+
+        TaskMetrics metrics = new TaskMetrics();
+        metrics.register("test", 3);
+        assertTrue(server.isRegistered(taskName));
+
+        TableMetrics table = new TableMetrics();
+        table.drained(10, 4);
+        metrics.registerTable("t1", table);
+        assertEquals(10L, server.getAttribute(tableName, "DrainedRows"));
+        assertEquals(4L, server.getAttribute(tableName, "DisorderedRows"));
+
+        metrics.unregisterTable("t1");
+        assertFalse(server.isRegistered(tableName));
+
+        metrics.registerTable("t1", table);
+        metrics.unregister();
+        assertFalse(server.isRegistered(tableName));
+        assertFalse(server.isRegistered(taskName));
+    }
+
+    /**
+     * Tests that a restarted task replaces the metrics its previous instance
+     * left behind.
+     */
+    @Test
+    public void testReplaceStaleMetrics() throws Exception {
+        ObjectName taskName = new ObjectName("net.quasardb.kafka:type=QdbSinkTask,connector=test,task=4");
+
+        TaskMetrics stale = new TaskMetrics();
+        stale.register("test", 4);
+
+        TaskMetrics metrics = new TaskMetrics();
+        metrics.paused(true);
+        metrics.register("test", 4);
+        assertEquals(1L, server.getAttribute(taskName, "Pauses"));
+
+        metrics.unregister();
+        assertFalse(server.isRegistered(taskName));
+    }
+}
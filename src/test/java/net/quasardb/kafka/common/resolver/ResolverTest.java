@@ -0,0 +1,108 @@
+package net.quasardb.kafka.common.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.Test;
+
+import net.quasardb.kafka.common.JsonFields;
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+
+public class ResolverTest {
+
+    private static final QdbSinkConfig config = new QdbSinkConfig(Collections.emptyMap());
+
+    private static List<SinkRecord> records(String... topics) {
+        List<SinkRecord> out = new ArrayList<>();
+        for (String topic : topics) {
+            Map<String, Object> value = new HashMap<>();
+            value.put("table", topic + "_table");
+
+            // Different String instance for every record
+            out.add(new SinkRecord(new String(topic), 0, null, null, null, value, out.size()));
+        }
+
+        return out;
+    }
+
+    /**
+     * Tests that batch resolution gives the same results as resolving records
+     * one by one.
+     */
+    @Test
+    public void testResolveAll() {
+        List<SinkRecord> records = records("a", "a", "b", "a");
+
+        String[] out = new String[records.size()];
+        new StaticResolver<>(config, "t").resolveAll(records, out);
+        assertArrayEquals(new String[] { "t", "t", "t", "t" }, out);
+
+        new TopicResolver(config).resolveAll(records, out);
+        assertArrayEquals(new String[] { "a", "a", "b", "a" }, out);
+
+        new DefaultColumnResolver<String>(config, "table").resolveAll(records, out);
+        assertArrayEquals(new String[] { "a_table", "a_table", "b_table", "a_table" }, out);
+
+        new SuffixedResolver(config, "table", "_skeleton").resolveAll(records, out);
+        assertArrayEquals(new String[] { "a_table_skeleton", "a_table_skeleton", "b_table_skeleton", "a_table_skeleton" }, out);
+    }
+
+    /**
+     * Tests that the suffix is appended once to every record of a batch, also
+     * to records whose value is of a different kind than the first one's.
+     */
+    @Test
+    public void testResolveAllSuffixedMixedValues() {
+        List<SinkRecord> records = records("a", "b");
+        records.add(new SinkRecord("c", 0, null, null, null,
+                                   JsonFields.parse("{\"table\": \"c_table\"}"), records.size()));
+
+        String[] out = new String[records.size()];
+        new SuffixedResolver(config, "table", "_skeleton").resolveAll(records, out);
+        assertArrayEquals(new String[] { "a_table_skeleton", "b_table_skeleton", "c_table_skeleton" }, out);
+    }
+
+    /**
+     * Tests that a numeric header, as SimpleHeaderConverter produces, resolves
+     * to a table name.
+     */
+    @Test
+    public void testResolveNameFromIntegerHeader() {
+        List<SinkRecord> records = records("a", "b");
+        records.get(0).headers().addInt("table", 42);
+        records.get(1).headers().addString("table", "t");
+
+        HeaderResolver<String> resolver = new HeaderResolver<>(config, "table", true);
+        assertEquals("42", resolver.resolve(records.get(0)));
+
+        String[] out = new String[records.size()];
+        resolver.resolveAll(records, out);
+        assertArrayEquals(new String[] { "42", "t" }, out);
+    }
+
+    /**
+     * Tests that a numeric key, as LongConverter produces, resolves to a table
+     * name.
+     */
+    @Test
+    public void testResolveNameFromLongKey() {
+        List<SinkRecord> records = new ArrayList<>();
+        records.add(new SinkRecord("a", 0, Schema.INT64_SCHEMA, 42L, null, null, 0));
+        records.add(new SinkRecord("a", 0, Schema.INT64_SCHEMA, 43L, null, null, 1));
+
+        KeyResolver<String> resolver = new KeyResolver<>(config, null, true);
+        assertEquals("42", resolver.resolve(records.get(0)));
+
+        String[] out = new String[records.size()];
+        resolver.resolveAll(records, out);
+        assertArrayEquals(new String[] { "42", "43" }, out);
+    }
+}
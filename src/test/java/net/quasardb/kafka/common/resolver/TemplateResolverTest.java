@@ -0,0 +1,110 @@
+package net.quasardb.kafka.common.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.Test;
+
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+
+public class TemplateResolverTest {
+
+    private static final QdbSinkConfig config = new QdbSinkConfig(Collections.emptyMap());
+
+    private static SinkRecord record(String topic, String site) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("site", site);
+
+        SinkRecord record = new SinkRecord(topic, 0, null, null, null, value, 0);
+        record.headers().addString("device", "d1");
+        return record;
+    }
+
+    /**
+     * Tests that placeholders are replaced, and that resolving the same name
+     * twice returns the same instance.
+     */
+    @Test
+    public void testResolveTemplate() {
+        TemplateResolver r = new TemplateResolver(config, "${topic}_${field:site}.${header:device}");
+
+        String name = r.resolve(record("metrics", "paris"));
+        assertEquals("metrics_paris.d1", name);
+        assertSame(name, r.resolve(record("metrics", new String("paris"))));
+
+        assertEquals("metrics_london.d1", r.resolve(record("metrics", "london")));
+        assertNull(r.resolveTopic("metrics"));
+    }
+
+    /**
+     * Tests that templates only depending on the topic are known per topic.
+     */
+    @Test
+    public void testResolveTopicTemplate() {
+        TemplateResolver r = new TemplateResolver(config, "kafka/${topic}");
+
+        assertEquals("kafka/metrics", r.resolveTopic("metrics"));
+        assertSame(r.resolveTopic("metrics"), r.resolve(record("metrics", "paris")));
+    }
+
+    /**
+     * Tests that bytes are joined as UTF-8 text, and that parts without a
+     * textual form are rejected.
+     */
+    @Test
+    public void testResolveTemplateParts() {
+        TemplateResolver r = new TemplateResolver(config, "${topic}_${field:site}");
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("site", "paris".getBytes(StandardCharsets.UTF_8));
+        assertEquals("metrics_paris", r.resolve(new SinkRecord("metrics", 0, null, null, null, value, 0)));
+
+        value.put("site", 42);
+        assertEquals("metrics_42", r.resolve(new SinkRecord("metrics", 0, null, null, null, value, 0)));
+
+        Schema schema = SchemaBuilder.struct().field("city", Schema.STRING_SCHEMA).build();
+        value.put("site", new Struct(schema).put("city", "paris"));
+        assertThrows(DataException.class, () -> r.resolve(new SinkRecord("metrics", 0, null, null, null, value, 0)));
+    }
+
+    @Test
+    public void testInvalidTemplate() {
+        assertThrows(DataException.class, () -> new TemplateResolver(config, "${topic"));
+        assertThrows(DataException.class, () -> new TemplateResolver(config, "${partition}"));
+    }
+
+    /**
+     * Tests that the first matching route is used.
+     */
+    @Test
+    public void testRoutes() {
+        Map<String, String> routes = new LinkedHashMap<>();
+        routes.put("sensors\\..*", "sensors_${field:site}");
+        routes.put("sensors\\.raw", "raw");
+        routes.put("logs-[0-9]+", "logs");
+
+        RoutingResolver r = new RoutingResolver(config, routes, null);
+
+        assertEquals("sensors_paris", r.resolve(record("sensors.raw", "paris")));
+        assertEquals("logs", r.resolve(record("logs-42", "paris")));
+        assertEquals("logs", r.resolveTopic("logs-1"));
+        assertNull(r.resolveTopic("other"));
+        assertThrows(DataException.class, () -> r.resolve(record("other", "paris")));
+
+        RoutingResolver withFallback = new RoutingResolver(config, routes, new TemplateResolver(config, "${topic}"));
+        assertEquals("other", withFallback.resolve(record("other", "paris")));
+    }
+}
@@ -0,0 +1,33 @@
+package net.quasardb.kafka.common.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import net.quasardb.qdb.ts.Timespec;
+
+public class TimespecConverterTest {
+
+    /**
+     * Tests that numbers in any unit, also units coarser than a second, convert
+     * to the same instant as a number of nanoseconds does.
+     */
+    @ParameterizedTest
+    @EnumSource(TimeUnit.class)
+    public void testConvertUnit(TimeUnit unit) {
+        TimespecConverter converter = new TimespecConverter(unit);
+
+        for (long value : new long[] { 0, 1, 1234, -1234 }) {
+            long nanos = unit.toNanos(value);
+            Timespec expected = new Timespec(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+
+            for (Timespec ts : new Timespec[] { converter.convert(value), converter.convert(Long.toString(value)) }) {
+                assertEquals(expected.getSec(), ts.getSec());
+                assertEquals(expected.getNano(), ts.getNano());
+            }
+        }
+    }
+}
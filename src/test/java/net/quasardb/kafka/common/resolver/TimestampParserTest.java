@@ -0,0 +1,70 @@
+package net.quasardb.kafka.common.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.OffsetDateTime;
+
+import org.apache.kafka.connect.errors.DataException;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import net.quasardb.qdb.ts.Timespec;
+
+public class TimestampParserTest {
+
+    /**
+     * Tests that timestamps are parsed like java.time does, also when the
+     * cached date and time of the previous timestamp is reused.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "2020-01-31T12:34:56Z",
+                             "2020-02-29T23:59:59.999999999Z",
+                             "1969-12-31T23:59:59.5Z",
+                             "1900-03-01T00:00:00.123+01:00",
+                             "2038-01-19T03:14:07-05:30" })
+    public void testParse(String s) {
+        TimestampParser parser = new TimestampParser();
+        OffsetDateTime expected = OffsetDateTime.parse(s);
+
+        for (int i = 0; i < 2; ++i) {
+            Timespec ts = parser.parse(s);
+            assertEquals(expected.toEpochSecond(), ts.getSec());
+            assertEquals(expected.getNano(), ts.getNano());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "2020-01-31 12:34:56",
+                             "2020-01-31t12:34:56.1z",
+                             "2020-01-31T12:34:56,100+0100",
+                             "2020-01-31T12:34:56+01" })
+    public void testParseVariants(String s) {
+        String normalized = s.replace(' ', 'T').replace('t', 'T').replace('z', 'Z').replace(',', '.');
+        if (normalized.length() == 19) {
+            normalized += "Z";
+        } else if (normalized.endsWith("+0100")) {
+            normalized = normalized.replace("+0100", "+01:00");
+        } else if (normalized.endsWith("+01")) {
+            normalized += ":00";
+        }
+
+        OffsetDateTime expected = OffsetDateTime.parse(normalized);
+        Timespec ts = new TimestampParser().parse(s);
+
+        assertEquals(expected.toEpochSecond(), ts.getSec());
+        assertEquals(expected.getNano(), ts.getNano());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "2020-02-30T00:00:00Z",
+                             "2020-13-01T00:00:00Z",
+                             "2020-01-01T24:00:00Z",
+                             "2020-01-01X00:00:00Z",
+                             "2020-01-01T00:00:00.Z",
+                             "2020-01-01T00:00:00Zjunk",
+                             "2020-01-01" })
+    public void testParseInvalid(String s) {
+        assertThrows(DataException.class, () -> new TimestampParser().parse(s));
+    }
+}
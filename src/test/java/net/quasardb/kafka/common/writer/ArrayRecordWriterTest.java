@@ -0,0 +1,207 @@
+package net.quasardb.kafka.common.writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import net.quasardb.qdb.Session;
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Reader;
+import net.quasardb.qdb.ts.Row;
+import net.quasardb.qdb.ts.Table;
+import net.quasardb.qdb.ts.TimeRange;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Value;
+import net.quasardb.qdb.ts.Writer;
+
+import net.quasardb.kafka.common.TableBuffer;
+import net.quasardb.kafka.common.TableInfo;
+import net.quasardb.kafka.common.TestUtils;
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import net.quasardb.kafka.common.resolver.DefaultTimespecResolver;
+import net.quasardb.kafka.common.resolver.TimespecConverter;
+
+public class ArrayRecordWriterTest {
+
+    private static final QdbSinkConfig config = new QdbSinkConfig(Collections.emptyMap());
+
+    private Session session;
+    private Column[] columns;
+    private TableInfo table;
+    private long start;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        this.session = TestUtils.createSession();
+        this.columns = new Column[] { TestUtils.generateTableColumn(Value.Type.DOUBLE),
+                                      TestUtils.generateTableColumn(Value.Type.INT64) };
+        this.table = new TableInfo(TestUtils.createTable(this.session, this.columns), 0);
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * Tests that parallel arrays are written as one row per timestamp, with
+     * values that are not an array repeated on every row.
+     */
+    @Test
+    public void testParallelArrays() throws IOException {
+        ArrayRecordWriter writer = writer("timestamps", null, null);
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("timestamps", Arrays.asList(this.start, this.start + 1, this.start + 2));
+        value.put(this.columns[0].getName(), Arrays.asList(1.0, 2.0, 3.0));
+        value.put(this.columns[1].getName(), 7L);
+        SinkRecord record = record(null, value);
+
+        assertEquals(3, writer.rowsOf(record));
+
+        Writer w = Table.writer(this.session, this.table.getTable());
+        writer.write(w, this.table, record);
+        w.flush();
+
+        List<Row> rows = readRows();
+        assertEquals(3, rows.size());
+        for (int i = 0; i < rows.size(); ++i) {
+            assertEquals(1.0 + i, rows.get(i).getValues()[0].getDouble());
+            assertEquals(7L, rows.get(i).getValues()[1].getInt64());
+        }
+    }
+
+    /**
+     * Tests that arrays of points are staged as one row per point, for points
+     * that are structs as well as maps.
+     */
+    @Test
+    public void testArrayOfPoints() throws IOException {
+        ArrayRecordWriter writer = writer(null, "points", "ts");
+
+        Schema pointSchema = SchemaBuilder.struct()
+            .field("ts", Schema.INT64_SCHEMA)
+            .field(this.columns[0].getName(), Schema.FLOAT64_SCHEMA)
+            .field(this.columns[1].getName(), Schema.INT64_SCHEMA)
+            .build();
+        Schema schema = SchemaBuilder.struct()
+            .field("points", SchemaBuilder.array(pointSchema).build())
+            .build();
+
+        List<Struct> structs = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            structs.add(new Struct(pointSchema)
+                        .put("ts", this.start + i)
+                        .put(this.columns[0].getName(), 1.0 + i)
+                        .put(this.columns[1].getName(), (long) i));
+        }
+
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (int i = 2; i < 4; ++i) {
+            maps.add(point(this.start + i, 1.0 + i, i));
+        }
+
+        TableBuffer b = this.table.getBuffer();
+        writer.stage(b, this.table, record(schema, new Struct(schema).put("points", structs)));
+        writer.stage(b, this.table, record(null, Collections.singletonMap("points", maps)));
+        assertEquals(4, b.size());
+
+        Writer w = Table.writer(this.session, this.table.getTable());
+        b.drainTo(w, this.table.getOffset());
+        w.flush();
+
+        List<Row> rows = readRows();
+        assertEquals(4, rows.size());
+        for (int i = 0; i < rows.size(); ++i) {
+            assertEquals(1.0 + i, rows.get(i).getValues()[0].getDouble());
+            assertEquals((long) i, rows.get(i).getValues()[1].getInt64());
+        }
+    }
+
+    /**
+     * Tests that a column array with a different length than the timestamps
+     * is rejected without staging any row.
+     */
+    @Test
+    public void testMismatchedArrayLengths() {
+        ArrayRecordWriter writer = writer("timestamps", null, null);
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("timestamps", Arrays.asList(this.start, this.start + 1, this.start + 2));
+        value.put(this.columns[0].getName(), Arrays.asList(1.0, 2.0));
+        value.put(this.columns[1].getName(), 7L);
+
+        TableBuffer b = this.table.getBuffer();
+        assertThrows(DataException.class, () -> writer.stage(b, this.table, record(null, value)));
+        assertEquals(0, b.size());
+    }
+
+    /**
+     * Tests that when a point cannot be converted, none of the points of its
+     * record stay staged, while rows staged before are kept.
+     */
+    @Test
+    public void testFailedPointIsRolledBack() {
+        ArrayRecordWriter writer = writer(null, "points", "ts");
+        TableBuffer b = this.table.getBuffer();
+
+        writer.stage(b, this.table, record(null, Collections.singletonMap("points",
+                                                                          Arrays.asList(point(this.start, 1.0, 1)))));
+        long bytes = b.estimatedBytes();
+
+        // The last point has no timestamp
+        List<Map<String, Object>> points = Arrays.asList(point(this.start + 1, 2.0, 2),
+                                                         point(this.start + 2, 3.0, 3),
+                                                         point(this.start + 3, 4.0, 4));
+        points.get(2).remove("ts");
+
+        assertThrows(DataException.class,
+                     () -> writer.stage(b, this.table, record(null, Collections.singletonMap("points", points))));
+        assertEquals(1, b.size());
+        assertEquals(bytes, b.estimatedBytes());
+        assertFalse(b.isSet(0, 1));
+    }
+
+    private static ArrayRecordWriter writer(String timestampsField, String pointsField, String pointTimestampField) {
+        return new ArrayRecordWriter(new DefaultTimespecResolver(config),
+                                     new TimespecConverter(TimeUnit.MILLISECONDS),
+                                     timestampsField, pointsField, pointTimestampField);
+    }
+
+    private Map<String, Object> point(long ts, double d, long l) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("ts", ts);
+        out.put(this.columns[0].getName(), d);
+        out.put(this.columns[1].getName(), l);
+        return out;
+    }
+
+    private static SinkRecord record(Schema schema, Object value) {
+        return new SinkRecord("topic", 0, null, null, schema, value, 0);
+    }
+
+    private List<Row> readRows() {
+        TimeRange[] ranges = { new TimeRange(new Timespec(this.start), new Timespec(this.start + 60_000)) };
+        Reader reader = Table.reader(this.session, this.table.getTable().getName(), ranges);
+
+        List<Row> out = new ArrayList<>();
+        while (reader.hasNext()) {
+            out.add(reader.next());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,156 @@
+package net.quasardb.kafka.common.writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import net.quasardb.qdb.Session;
+import net.quasardb.qdb.ts.Column;
+import net.quasardb.qdb.ts.Reader;
+import net.quasardb.qdb.ts.Row;
+import net.quasardb.qdb.ts.Table;
+import net.quasardb.qdb.ts.TimeRange;
+import net.quasardb.qdb.ts.Timespec;
+import net.quasardb.qdb.ts.Writer;
+
+import net.quasardb.kafka.common.TableBuffer;
+import net.quasardb.kafka.common.TableInfo;
+import net.quasardb.kafka.common.TestUtils;
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+import net.quasardb.kafka.common.resolver.DefaultTimespecResolver;
+import net.quasardb.kafka.common.resolver.HeaderResolver;
+import net.quasardb.kafka.common.resolver.StaticResolver;
+
+public class ColumnRecordWriterTest {
+
+    private static final QdbSinkConfig config = new QdbSinkConfig(Collections.emptyMap());
+
+    private Session session;
+    private Column[] columns;
+    private TableInfo table;
+    private ColumnRecordWriter writer;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        this.session = TestUtils.createSession();
+        this.columns = TestUtils.generateTableColumns(3);
+        this.table = new TableInfo(TestUtils.createTable(this.session, this.columns), 0);
+        this.writer = new ColumnRecordWriter(new DefaultTimespecResolver(config),
+                                             new HeaderResolver<>(config, "column"),
+                                             new StaticResolver<>(config, "value"),
+                                             8);
+    }
+
+    /**
+     * Tests that a batch of values sharing a timestamp is staged as a single
+     * dense row, and that a value for a column that is already set starts a
+     * new row.
+     */
+    @Test
+    public void testCoalesceBatch() {
+        List<SinkRecord> records = Arrays.asList(record(0, 1000, 1.0),
+                                                 record(1, 1000, 2.0),
+                                                 record(2, 1000, 3.0),
+                                                 record(0, 1000, 4.0),
+                                                 record(1, 2000, 5.0));
+
+        this.writer.stage(this.table, records);
+
+        TableBuffer b = this.table.getBuffer();
+        assertEquals(3, b.size());
+
+        assertTrue(b.isDense(0));
+        for (int c = 0; c < this.columns.length; ++c) {
+            assertTrue(b.isSet(c, 0));
+        }
+
+        assertFalse(b.isDense(1));
+        assertTrue(b.isSet(0, 1));
+        assertFalse(b.isSet(1, 1));
+
+        assertFalse(b.isDense(2));
+        assertTrue(b.isSet(1, 2));
+        assertFalse(b.isSet(0, 2));
+    }
+
+    /**
+     * Tests that a value which cannot be converted leaves the row it would
+     * have been merged into as it was.
+     */
+    @Test
+    public void testFailedCoalesceIsRolledBack() {
+        TableBuffer b = this.table.getBuffer();
+
+        this.writer.stage(b, this.table, record(0, 1000, 1.0));
+        long bytes = b.estimatedBytes();
+
+        SinkRecord invalid = new SinkRecord("topic", 0, null, null, null, "not a map", 0,
+                                            1000L, TimestampType.CREATE_TIME);
+        invalid.headers().addString("column", this.columns[1].getName());
+
+        assertThrows(DataException.class, () -> this.writer.stage(b, this.table, invalid));
+        assertEquals(1, b.size());
+        assertEquals(bytes, b.estimatedBytes());
+        assertFalse(b.isDense(0));
+        assertFalse(b.isSet(1, 0));
+
+        this.writer.stage(b, this.table, record(1, 1000, 2.0));
+        assertEquals(1, b.size());
+        assertTrue(b.isDense(0));
+        assertTrue(b.isSet(1, 0));
+    }
+
+    /**
+     * Tests that a block of values written without buffering is merged within
+     * the window like buffered values, rather than only when consecutive.
+     */
+    @Test
+    public void testCoalesceBlockWithinWindow() throws IOException {
+        List<SinkRecord> records = Arrays.asList(record(0, 1000, 1.0),
+                                                 record(0, 2000, 2.0),
+                                                 record(1, 1000, 3.0),
+                                                 record(1, 2000, 4.0),
+                                                 record(2, 1000, 5.0));
+
+        Writer w = Table.writer(this.session, this.table.getTable());
+        this.writer.write(w, this.table, records);
+        w.flush();
+
+        TimeRange[] ranges = { new TimeRange(new Timespec(0), new Timespec(3000)) };
+        Reader reader = Table.reader(this.session, this.table.getTable().getName(), ranges);
+
+        List<Row> rows = new ArrayList<>();
+        while (reader.hasNext()) {
+            rows.add(reader.next());
+        }
+
+        assertEquals(2, rows.size());
+        assertEquals(1.0, rows.get(0).getValues()[0].getDouble());
+        assertEquals(3.0, rows.get(0).getValues()[1].getDouble());
+        assertEquals(5.0, rows.get(0).getValues()[2].getDouble());
+        assertEquals(2.0, rows.get(1).getValues()[0].getDouble());
+        assertEquals(4.0, rows.get(1).getValues()[1].getDouble());
+    }
+
+    private SinkRecord record(int column, long timestamp, double value) {
+        SinkRecord out = new SinkRecord("topic", 0, null, null,
+                                        null, Collections.singletonMap("value", value),
+                                        0, timestamp, TimestampType.CREATE_TIME);
+        out.headers().addString("column", this.columns[column].getName());
+        return out;
+    }
+}
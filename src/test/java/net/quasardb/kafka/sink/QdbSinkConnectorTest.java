@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import net.quasardb.kafka.common.config.QdbSinkConfig;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +29,9 @@ public class QdbSinkConnectorTest {
         List<Map<String, String>> taskConfigs = connector.taskConfigs(NUM_TASKS);
         assertEquals(taskConfigs.size(), NUM_TASKS);
         for (int i = 0; i < taskConfigs.size(); ++i) {
-            assertEquals(taskConfigs.get(i), props);
+            Map<String, String> expected = new HashMap<>(props);
+            expected.put(QdbSinkConfig.TASK_ID, Integer.toString(i));
+            assertEquals(expected, taskConfigs.get(i));
         }
     }
 
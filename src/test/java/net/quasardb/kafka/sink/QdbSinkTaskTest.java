@@ -1,6 +1,8 @@
 package net.quasardb.kafka.sink;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import net.quasardb.kafka.common.config.QdbSinkConfig;
@@ -17,10 +19,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.IntStream;
 import java.io.IOException;
 
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.connect.sink.SinkRecord;
@@ -36,6 +41,7 @@ import net.quasardb.qdb.ts.Timespec;
 import net.quasardb.qdb.ts.Table;
 import net.quasardb.qdb.ts.Tables;
 
+import net.quasardb.kafka.common.TableBuffer;
 import net.quasardb.kafka.common.TestUtils;
 import net.quasardb.kafka.common.Fixture;
 
@@ -106,6 +112,23 @@ public class QdbSinkTaskTest {
         this.task.stop();
     }
 
+    /**
+     * Tests that a collection of regular rows can be inserted in batched mode.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecords")
+    public void testPutRowsBatched(Fixture fixture, Integer offset, Collection<SinkRecord> records) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.PUT_MODE_BATCHED, "true");
+
+        this.task.start(props);
+        this.task.put(records);
+        this.task.flush(new HashMap<>());
+
+        this.task.stop();
+    }
+
     /**
      * Tests that rows are visible after flushing.
      */
@@ -144,6 +167,375 @@ public class QdbSinkTaskTest {
         this.task.stop();
     }
 
+    /**
+     * Tests that rows staged in the table buffers are visible after flushing.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testBufferedRowsVisibleAfterFlush(Fixture fixture,
+                                                  Integer offset,
+                                                  Row row,
+                                                  SinkRecord record) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "1000");
+
+        this.task.start(props);
+        this.task.put(Collections.singletonList(record));
+        this.task.flush(new HashMap<>());
+
+        // Sleep 1 seconds, our flush interval
+        try {
+            Thread.sleep(1100);
+        } catch (Exception e) {
+            throw new Error("Unexpected exception", e);
+        }
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+        assertEquals(true, reader.hasNext());
+
+        Row row2 = reader.next();
+        assertEquals(row, row2);
+        assertEquals(false, reader.hasNext());
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that with asynchronous flushing, offsets are only reported once the
+     * records were flushed.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecords")
+    public void testAsyncFlushReportsFlushedOffsets(Fixture fixture, Integer offset, Collection<SinkRecord> records) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "1000");
+        props.put(QdbSinkConfig.FLUSH_MODE_ASYNC, "true");
+
+        SinkRecord last = records.stream().reduce((a, b) -> b).get();
+        TopicPartition tp = new TopicPartition(last.topic(), last.kafkaPartition());
+        Map<TopicPartition, OffsetAndMetadata> current =
+            Collections.singletonMap(tp, new OffsetAndMetadata(last.kafkaOffset() + 1));
+
+        this.task.start(props);
+        this.task.put(records);
+        this.task.flush(new HashMap<>());
+
+        Map<TopicPartition, OffsetAndMetadata> committed = this.task.preCommit(current);
+        assertEquals(last.kafkaOffset() + 1, committed.get(tp).offset());
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that rows converted in parallel are buffered in the order their
+     * records were put, across chunk boundaries and for interleaved tables.
+     */
+    @ParameterizedTest
+    @MethodSource("noSchema")
+    public void testParallelConversionKeepsOrder(Fixture fixture) throws IOException {
+        SinkRecord[][] tables = {
+            fixture.withRecords(Schema.Type.STRUCT).records[0],
+            Fixture.of(TestUtils.createSession()).withRecords(Schema.Type.STRUCT).records[0]
+        };
+
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "100000");
+        props.put(QdbSinkConfig.CONVERSION_PARALLELISM, "4");
+        props.put(QdbSinkConfig.CONVERSION_CHUNK_SIZE, "7");
+
+        // Alternate between two tables, with timestamps increasing in the
+        // order the records are put.
+        List<SinkRecord> records = new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < tables[0].length && i < tables[1].length; ++i) {
+            for (SinkRecord r : new SinkRecord[] { tables[0][i], tables[1][i] }) {
+                records.add(r.newRecord(r.topic(), r.kafkaPartition(),
+                                        r.keySchema(), r.key(),
+                                        r.valueSchema(), r.value(),
+                                        timestamp++));
+            }
+        }
+
+        this.task.start(props);
+        this.task.put(records);
+
+        for (SinkRecord[] table : tables) {
+            TableBuffer b = this.task.getTableRegistry().get(table[0].topic()).getBuffer();
+            assertEquals(records.size() / 2, b.size());
+            assertEquals(0, b.disorder());
+        }
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that tables matching a writer group use that group's writer, and
+     * that the rows of every writer are visible after flushing.
+     */
+    @ParameterizedTest
+    @MethodSource("noSchema")
+    public void testWriterGroups(Fixture fixture) throws IOException {
+        SinkRecord[] records = {
+            fixture.withRecords(Schema.Type.STRUCT).records[0][0],
+            Fixture.of(TestUtils.createSession()).withRecords(Schema.Type.STRUCT).records[0][0]
+        };
+
+        // Table 1 in the first group, table 0 in the second
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.WRITER_COUNT, "2");
+        props.put(QdbSinkConfig.WRITER_GROUPS,
+                  Pattern.quote(records[1].topic()) + "," + Pattern.quote(records[0].topic()));
+
+        this.task.start(props);
+        this.task.put(Arrays.asList(records));
+        this.task.flush(new HashMap<>());
+
+        assertEquals(1, this.task.getTableRegistry().get(records[0].topic()).getWriter().getId());
+        assertEquals(0, this.task.getTableRegistry().get(records[1].topic()).getWriter().getId());
+
+        for (SinkRecord record : records) {
+            Timespec ts = new Timespec(record.timestamp());
+            TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+            Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+            assertEquals(true, reader.hasNext());
+        }
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that while a record waits for its table to be created in the
+     * background, asynchronous flushes do not report offsets past it, even when
+     * later records of its partition were flushed.
+     */
+    @ParameterizedTest
+    @MethodSource("noSchema")
+    public void testAsyncFlushKeepsParkedOffsetsUncommitted(Fixture fixture) throws IOException {
+        SinkRecord[] registered = fixture.withRecords(Schema.Type.STRUCT).records[0];
+        SinkRecord[] parked = Fixture.of(TestUtils.createSession()).withRecords(Schema.Type.STRUCT).records[0];
+
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_HEADER_CONFIG, "table");
+        props.put(QdbSinkConfig.TABLE_CREATE_THREADS, "1");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "1000");
+        props.put(QdbSinkConfig.FLUSH_MODE_ASYNC, "true");
+        props.put(QdbSinkConfig.FLUSH_MAX_BUFFERED_ROWS, "2");
+
+        String topic = TestUtils.createUniqueAlias();
+        TopicPartition tp = new TopicPartition(topic, 0);
+
+        this.task.start(props);
+
+        // Registers the first table
+        this.task.put(Collections.singletonList(routed(registered[0], topic, 0)));
+        this.task.flush(new HashMap<>());
+        assertEquals(1L, (long) this.task.getFlushedOffsets().get(tp));
+
+        // The record at offset 1 is parked, the next two trigger a flush
+        this.task.put(Arrays.asList(routed(parked[0], topic, 1),
+                                    routed(registered[1], topic, 2),
+                                    routed(registered[2], topic, 3)));
+
+        // Sleep 1 seconds, our flush interval
+        try {
+            Thread.sleep(1100);
+        } catch (Exception e) {
+            throw new Error("Unexpected exception", e);
+        }
+
+        assertEquals(1L, (long) this.task.getFlushedOffsets().get(tp));
+
+        this.task.flush(new HashMap<>());
+
+        Map<TopicPartition, OffsetAndMetadata> committed =
+            this.task.preCommit(Collections.singletonMap(tp, new OffsetAndMetadata(4)));
+        assertEquals(4, committed.get(tp).offset());
+
+        this.task.stop();
+    }
+
+    /**
+     * Copies a record into the given topic and offset, with a header routing it
+     * to the table of its original topic.
+     */
+    private static SinkRecord routed(SinkRecord record, String topic, long offset) {
+        SinkRecord out = new SinkRecord(topic, 0,
+                                        record.keySchema(), record.key(),
+                                        record.valueSchema(), record.value(),
+                                        offset,
+                                        record.timestamp(), record.timestampType());
+        out.headers().addString("table", record.topic());
+        return out;
+    }
+
+    /**
+     * Tests that a batch Connect delivers again before its offsets were
+     * committed is not written twice.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecords")
+    public void testReplayedRecordsDropped(Fixture fixture, Integer offset, Collection<SinkRecord> records) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.DEDUP_WINDOW_RECORDS, "1000");
+
+        List<SinkRecord> batch = new ArrayList<>(records.size());
+        for (SinkRecord record : records) {
+            batch.add(new SinkRecord(record.topic(), record.kafkaPartition(),
+                                     record.keySchema(), record.key(),
+                                     record.valueSchema(), record.value(),
+                                     batch.size(),
+                                     record.timestamp(), record.timestampType()));
+        }
+
+        this.task.start(props);
+        this.task.put(batch);
+        this.task.put(batch);
+        this.task.flush(new HashMap<>());
+
+        long from = batch.stream().mapToLong(SinkRecord::timestamp).min().getAsLong();
+        long to = batch.stream().mapToLong(SinkRecord::timestamp).max().getAsLong();
+        TimeRange[] ranges = { new TimeRange(new Timespec(from), new Timespec(to).plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), batch.get(0).topic(), ranges);
+        int rows = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            ++rows;
+        }
+        assertEquals(batch.size(), rows);
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that when put fails, the records Connect delivers again are written
+     * rather than taken for replays.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecords")
+    public void testRecordsOfFailedPutWrittenWhenRedelivered(Fixture fixture, Integer offset, Collection<SinkRecord> records) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.DEDUP_WINDOW_RECORDS, "1000");
+
+        List<SinkRecord> batch = new ArrayList<>(records.size());
+        for (SinkRecord record : records) {
+            batch.add(new SinkRecord(record.topic(), record.kafkaPartition(),
+                                     record.keySchema(), record.key(),
+                                     record.valueSchema(), record.value(),
+                                     batch.size(),
+                                     record.timestamp(), record.timestampType()));
+        }
+
+        // The table of the last record does not exist and cannot be created
+        SinkRecord first = batch.get(0);
+        List<SinkRecord> failing = new ArrayList<>(batch);
+        failing.add(new SinkRecord(TestUtils.createUniqueAlias(), 0,
+                                   first.keySchema(), first.key(),
+                                   first.valueSchema(), first.value(),
+                                   0,
+                                   first.timestamp(), first.timestampType()));
+
+        this.task.start(props);
+        assertThrows(DataException.class, () -> this.task.put(failing));
+
+        this.task.put(batch);
+        this.task.flush(new HashMap<>());
+
+        long from = batch.stream().mapToLong(SinkRecord::timestamp).min().getAsLong();
+        long to = batch.stream().mapToLong(SinkRecord::timestamp).max().getAsLong();
+        TimeRange[] ranges = { new TimeRange(new Timespec(from), new Timespec(to).plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), first.topic(), ranges);
+        int rows = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            ++rows;
+        }
+        assertEquals(batch.size(), rows);
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that rows are flushed once the maximum number of buffered rows is
+     * reached, without an explicit flush.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testRowsVisibleAfterMaxBufferedRows(Fixture fixture,
+                                                    Integer offset,
+                                                    Row row,
+                                                    SinkRecord record) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "1000");
+        props.put(QdbSinkConfig.FLUSH_MAX_BUFFERED_ROWS, "1");
+
+        this.task.start(props);
+        this.task.put(Collections.singletonList(record));
+
+        // Sleep 1 seconds, our flush interval
+        try {
+            Thread.sleep(1100);
+        } catch (Exception e) {
+            throw new Error("Unexpected exception", e);
+        }
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+        assertEquals(true, reader.hasNext());
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that rows of a table are written when the table is evicted from the
+     * registry, without an explicit flush.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testRowsVisibleAfterTableEvicted(Fixture fixture,
+                                                 Integer offset,
+                                                 Row row,
+                                                 SinkRecord record) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.BUFFER_TABLE_MAX_ROWS, "1000");
+        props.put(QdbSinkConfig.TABLE_REGISTRY_IDLE_TTL_MS, "1");
+
+        this.task.start(props);
+        this.task.put(Collections.singletonList(record));
+
+        try {
+            Thread.sleep(10);
+        } catch (Exception e) {
+            throw new Error("Unexpected exception", e);
+        }
+
+        // Expires the table, which detaches it from the only writer and
+        // rotates the writer.
+        this.task.put(Collections.emptyList());
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+        assertEquals(true, reader.hasNext());
+
+        this.task.stop();
+    }
+
     /**
      * Tests that a new table can be created by a skeleton.
      */
@@ -185,6 +577,41 @@ public class QdbSinkTaskTest {
     }
 
 
+    /**
+     * Tests that records of a table created in the background are written once
+     * the table is ready.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testAutoCreateTableInBackground(Fixture fixture,
+                                                Integer offset,
+                                                Row row,
+                                                SinkRecord record) {
+        Map<String, String> props = fixture.props;
+        String newTableName = TestUtils.createUniqueAlias();
+
+        props.put(QdbSinkConfig.TABLE_CONFIG, newTableName);
+        props.put(QdbSinkConfig.TABLE_AUTOCREATE_SKELETON_COLUMN_CONFIG, Fixture.SKELETON_COLUMN_ID);
+        props.put(QdbSinkConfig.TABLE_AUTOCREATE_SKELETON_SUFFIX_CONFIG, "_skeleton");
+        props.put(QdbSinkConfig.TABLE_CREATE_THREADS, "1");
+
+        this.task.start(props);
+        this.task.put(Collections.singletonList(record));
+        this.task.flush(new HashMap());
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+
+        Reader reader = Table.reader(TestUtils.createSession(), newTableName, ranges);
+        assertEquals(true, reader.hasNext());
+
+        Row row2 = reader.next();
+        assertEquals(row, row2);
+        assertEquals(false, reader.hasNext());
+
+        this.task.stop();
+    }
+
     /**
      * Tests that a new table's tags can be set automatically.
      */
@@ -288,6 +715,68 @@ public class QdbSinkTaskTest {
     }
 
 
+    /**
+     * Tests that the tables of assigned topics are registered when the
+     * partitions are opened, before their first record arrives.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testPrewarmTablesOnOpen(Fixture fixture,
+                                        Integer offset,
+                                        Row row,
+                                        SinkRecord record) {
+        Map<String, String> props = fixture.props;
+        props.put(QdbSinkConfig.TABLE_FROM_TOPIC_CONFIG, "true");
+        props.put(QdbSinkConfig.TABLE_PREWARM_THREADS, "2");
+
+        String missing = TestUtils.createUniqueAlias();
+
+        this.task.start(props);
+        assertNull(this.task.getTableRegistry().get(record.topic()));
+
+        this.task.open(Arrays.asList(new TopicPartition(record.topic(), 0),
+                                     new TopicPartition(missing, 0)));
+        assertNotNull(this.task.getTableRegistry().get(record.topic()));
+        assertNull(this.task.getTableRegistry().get(missing));
+
+        this.task.put(Collections.singletonList(record));
+        this.task.flush(new HashMap<>());
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+        Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+        assertEquals(true, reader.hasNext());
+
+        this.task.stop();
+    }
+
+    /**
+     * Tests that a table can be derived from a Kafka header.
+     */
+    @ParameterizedTest
+    @MethodSource("randomRecord")
+    public void testResolveTableFromHeader(Fixture fixture,
+                                           Integer offset,
+                                           Row row,
+                                           SinkRecord record) {
+        Map<String, String> props = fixture.props;
+
+        props.put(QdbSinkConfig.TABLE_FROM_HEADER_CONFIG, "table");
+        record.headers().addString("table", record.topic());
+
+        this.task.start(props);
+        this.task.put(Collections.singletonList(record));
+        this.task.flush(new HashMap());
+
+        Timespec ts = new Timespec(record.timestamp());
+        TimeRange[] ranges = { new TimeRange(ts, ts.plusNanos(1)) };
+        Reader reader = Table.reader(TestUtils.createSession(), record.topic(), ranges);
+        assertEquals(true, reader.hasNext());
+
+        this.task.stop();
+    }
+
+
     /**
      * Tests that a table can be derived from a composite of multiple columns
      */